@@ -0,0 +1,135 @@
+/**
+ *  ConcurrencyLimiter
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader;
+
+import org.json.JSONObject;
+
+import net.yacy.grid.loader.retrieval.HtmlUnitLoader;
+import net.yacy.grid.tools.Memory;
+
+/**
+ * An AIMD (additive increase, multiplicative decrease) limit for the number of concurrently processed actions.
+ * The latency and the error rate are computed from the fetches of the single urls, which are reported with record;
+ * the throttling waits and the processing of an action are not part of the latency.
+ * The limit grows by one for each limit-many released actions while the limit is used up. It shrinks by a factor if
+ * - the memory status is short,
+ * - the fetch error rate exceeds the maximum error rate,
+ * - more headless renders are running than allowed, or
+ * - the fetch latency is more than twice the long-term fetch latency, which means that more concurrency does not add throughput.
+ */
+public class ConcurrencyLimiter {
+
+    private static final double BACKOFF = 0.75d;
+    private static final double SHORT_ALPHA = 0.2d;  // smoothing of the recent latency and error rate
+    private static final double LONG_ALPHA = 0.01d;  // smoothing of the long-term latency
+    private static final long DECREASE_PAUSE = 1000; // minimum time between two decreases
+
+    private final int minLimit, maxLimit, maxHeadless;
+    private final double maxErrorRate;
+    private double limit;
+    private int inFlight;
+    private double shortLatency, longLatency, errorRate;
+    private long lastDecrease;
+    private String lastReason;
+
+    public ConcurrencyLimiter(final int minLimit, final int initialLimit, final int maxLimit, final double maxErrorRate, final int maxHeadless) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxErrorRate = maxErrorRate;
+        this.maxHeadless = maxHeadless;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.inFlight = 0;
+        this.shortLatency = 0.0d;
+        this.longLatency = 0.0d;
+        this.errorRate = 0.0d;
+        this.lastDecrease = 0;
+        this.lastReason = "start";
+    }
+
+    /**
+     * wait until the number of running actions is below the current limit and register a new running action
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (this.inFlight >= (int) this.limit) this.wait();
+        this.inFlight++;
+    }
+
+    /**
+     * record the outcome of the fetch of a single url
+     * @param fetchTime the time of the request until the content was read in milliseconds
+     * @param failed true if the host failed to answer, i.e. with a timeout or a refused connection
+     */
+    public synchronized void record(final long fetchTime, final boolean failed) {
+        this.errorRate = SHORT_ALPHA * (failed ? 1.0d : 0.0d) + (1.0d - SHORT_ALPHA) * this.errorRate;
+        if (!failed) {
+            this.shortLatency = this.shortLatency == 0.0d ? fetchTime : SHORT_ALPHA * fetchTime + (1.0d - SHORT_ALPHA) * this.shortLatency;
+            this.longLatency = this.longLatency == 0.0d ? fetchTime : LONG_ALPHA * fetchTime + (1.0d - LONG_ALPHA) * this.longLatency;
+        }
+    }
+
+    /**
+     * unregister a running action and adopt the limit to the recorded fetches
+     */
+    public synchronized void release() {
+        final boolean saturated = this.inFlight >= (int) this.limit;
+        this.inFlight--;
+
+        final String reason =
+                Memory.shortStatus() ? "short memory" :
+                this.errorRate > this.maxErrorRate ? "error rate" :
+                HtmlUnitLoader.rendersInFlight() > this.maxHeadless ? "headless renders" :
+                this.longLatency > 0.0d && this.shortLatency > 2.0d * this.longLatency ? "latency" : null;
+        final long now = System.currentTimeMillis();
+        if (reason != null) {
+            if (now - this.lastDecrease > DECREASE_PAUSE) {
+                this.limit = Math.max(this.minLimit, this.limit * BACKOFF);
+                this.lastDecrease = now;
+                this.lastReason = "decrease: " + reason;
+            }
+        } else if (saturated) {
+            this.limit = Math.min(this.maxLimit, this.limit + 1.0d / this.limit);
+            this.lastReason = "increase";
+        }
+        this.notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    public synchronized JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("limit", (int) this.limit);
+        json.put("min", this.minLimit);
+        json.put("max", this.maxLimit);
+        json.put("inFlight", this.inFlight);
+        json.put("latency", (long) this.shortLatency);
+        json.put("latencyLongTerm", (long) this.longLatency);
+        json.put("errorRate", this.errorRate);
+        json.put("headlessRenders", HtmlUnitLoader.rendersInFlight());
+        json.put("lastAdjustment", this.lastReason);
+        return json;
+    }
+}
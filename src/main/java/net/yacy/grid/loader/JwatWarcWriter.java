@@ -21,6 +21,7 @@ package net.yacy.grid.loader;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
@@ -83,6 +84,16 @@ public class JwatWarcWriter {
     }
 
     public static void writeResponse(final WarcWriter writer, final String url, final String ip, final Date date, final String warcrecord_uuid, final String warcinfo_uuid, final byte[] payload) throws IOException {
+        writeResponse(writer, url, ip, date, warcrecord_uuid, warcinfo_uuid, new ByteArrayInputStream(payload), payload.length, false);
+    }
+
+    /**
+     * write a response record with a streamed payload
+     * @param payload the response header and content
+     * @param length the number of bytes in the payload
+     * @param truncated true if the content was cut off at the maximum content size; this is recorded as WARC-Truncated header
+     */
+    public static void writeResponse(final WarcWriter writer, final String url, final String ip, final Date date, final String warcrecord_uuid, final String warcinfo_uuid, final InputStream payload, final long length, final boolean truncated) throws IOException {
         final WarcRecord record = WarcRecord.createRecord(writer);
         record.header.addHeader("WARC-Type", "response");
         if (warcrecord_uuid != null) record.header.addHeader("WARC-Record-ID", "<urn:uuid:" + warcrecord_uuid + ">");
@@ -93,6 +104,28 @@ public class JwatWarcWriter {
         //record.header.addHeader("WARC-Block-Digest", "sha1:" + sha1(payload));
         //record.header.addHeader("WARC-Payload-Digest", "sha1:" + sha1(payload));
         record.header.addHeader("Content-Type", "application/http;msgtype=response");
+        if (truncated) record.header.addHeader("WARC-Truncated", "length");
+        record.header.addHeader("Content-Length", Long.toString(length));
+        writer.writeHeader(record);
+        writer.streamPayload(payload);
+        writer.closeRecord();
+    }
+
+    /**
+     * write a revisit record for a document which was not modified since the last load
+     * @param payload the response header of the 304 response
+     */
+    public static void writeRevisit(final WarcWriter writer, final String url, final String ip, final Date date, final String warcrecord_uuid, final String warcinfo_uuid, final byte[] payload) throws IOException {
+        final WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "revisit");
+        if (warcrecord_uuid != null) record.header.addHeader("WARC-Record-ID", "<urn:uuid:" + warcrecord_uuid + ">");
+        if (warcinfo_uuid != null) record.header.addHeader("WARC-Warcinfo-ID", "<urn:uuid:" + warcinfo_uuid + ">");
+        record.header.addHeader("WARC-Target-URI", url);
+        record.header.addHeader("WARC-Date", DateParser.iso8601Format.format(date));
+        if (ip != null) record.header.addHeader("WARC-IP-Address", ip);
+        record.header.addHeader("WARC-Profile", "http://netpreserve.org/warc/1.1/revisit/server-not-modified");
+        record.header.addHeader("WARC-Refers-To-Target-URI", url);
+        record.header.addHeader("Content-Type", "application/http;msgtype=response");
         record.header.addHeader("Content-Length", Long.toString(payload.length));
         writer.writeHeader(record);
         final ByteArrayInputStream inBytes = new ByteArrayInputStream(payload);
@@ -29,8 +29,23 @@ import net.yacy.grid.YaCyServices;
 import net.yacy.grid.http.ClientConnection;
 import net.yacy.grid.http.ClientIdentification;
 import net.yacy.grid.loader.api.LoaderService;
+import net.yacy.grid.loader.api.LoaderStatusService;
 import net.yacy.grid.loader.api.ProcessService;
+import net.yacy.grid.loader.retrieval.BandwidthShaper;
+import net.yacy.grid.loader.retrieval.BufferPool;
+import net.yacy.grid.loader.retrieval.ContentBuffer;
+import net.yacy.grid.loader.retrieval.ContentLoader;
+import net.yacy.grid.loader.retrieval.DnsCache;
+import net.yacy.grid.loader.retrieval.HeadlessRenderer;
+import net.yacy.grid.loader.retrieval.HostCircuitBreaker;
+import net.yacy.grid.loader.retrieval.HostTimeouts;
+import net.yacy.grid.loader.retrieval.HttpEngine;
+import net.yacy.grid.loader.retrieval.JettyHttpClient;
 import net.yacy.grid.loader.retrieval.LoaderClientConnection;
+import net.yacy.grid.loader.retrieval.RequestCoalescer;
+import net.yacy.grid.loader.retrieval.SharedResourceCache;
+import net.yacy.grid.loader.retrieval.StaticPageDetector;
+import net.yacy.grid.loader.retrieval.WebClientPool;
 import net.yacy.grid.mcp.BrokerListener;
 import net.yacy.grid.mcp.Configuration;
 import net.yacy.grid.mcp.MCP;
@@ -56,7 +71,8 @@ public class Loader {
     public final static Class<? extends Servlet>[] LOADER_SERVICES = new Class[]{
             // app services
             LoaderService.class,
-            ProcessService.class
+            ProcessService.class,
+            LoaderStatusService.class
     };
 
     public static class Application implements CronBox.Application {
@@ -85,6 +101,66 @@ public class Loader {
             else userAgent = ClientIdentification.getAgent(ClientIdentification.browserAgentName).userAgent;
             LoaderClientConnection.userAgent = userAgent;
 
+            // initialize the DNS cache
+            DnsCache.init(
+                    this.config.properties.containsKey("grid.loader.dns.ttl") ? Long.parseLong(this.config.properties.get("grid.loader.dns.ttl")) : 300000,
+                    this.config.properties.containsKey("grid.loader.dns.negativeTtl") ? Long.parseLong(this.config.properties.get("grid.loader.dns.negativeTtl")) : 30000,
+                    this.config.properties.containsKey("grid.loader.dns.threads") ? Integer.parseInt(this.config.properties.get("grid.loader.dns.threads")) : 8);
+
+            // initialize the connection pool of the http client
+            LoaderClientConnection.initClient(
+                    this.config.properties.containsKey("grid.loader.pool.maxTotal") ? Integer.parseInt(this.config.properties.get("grid.loader.pool.maxTotal")) : 200,
+                    this.config.properties.containsKey("grid.loader.pool.maxPerRoute") ? Integer.parseInt(this.config.properties.get("grid.loader.pool.maxPerRoute")) : 20,
+                    this.config.properties.containsKey("grid.loader.pool.keepAlive") ? Long.parseLong(this.config.properties.get("grid.loader.pool.keepAlive")) : 30000,
+                    this.config.properties.containsKey("grid.loader.pool.idleTimeout") ? Long.parseLong(this.config.properties.get("grid.loader.pool.idleTimeout")) : 60000);
+            if (this.config.properties.containsKey("grid.loader.content.memoryThreshold")) ContentBuffer.memoryThreshold = Integer.parseInt(this.config.properties.get("grid.loader.content.memoryThreshold"));
+            if (this.config.properties.containsKey("grid.loader.content.maxSize")) ContentBuffer.maxSize = Long.parseLong(this.config.properties.get("grid.loader.content.maxSize"));
+            if (this.config.properties.containsKey("grid.loader.content.poolSize")) BufferPool.maxPooled = Integer.parseInt(this.config.properties.get("grid.loader.content.poolSize"));
+            if (this.config.properties.containsKey("grid.loader.warc.storeEncoded")) ContentLoader.storeEncodedContent = Boolean.parseBoolean(this.config.properties.get("grid.loader.warc.storeEncoded"));
+            if (this.config.properties.containsKey("grid.loader.coalescing")) RequestCoalescer.enabled = Boolean.parseBoolean(this.config.properties.get("grid.loader.coalescing"));
+            if (this.config.properties.containsKey("grid.loader.coalescing.window")) RequestCoalescer.window = Long.parseLong(this.config.properties.get("grid.loader.coalescing.window"));
+            LoaderClientConnection.initDeadlines(
+                    this.config.properties.containsKey("grid.loader.deadline") ? Long.parseLong(this.config.properties.get("grid.loader.deadline")) : 10000,
+                    this.config.properties.get("grid.loader.deadline.hosts"));
+
+            // initialize the estimation of the timeouts for each host
+            HostTimeouts.init(
+                    this.config.properties.containsKey("grid.loader.timeout.floor") ? Long.parseLong(this.config.properties.get("grid.loader.timeout.floor")) : 2000,
+                    this.config.properties.containsKey("grid.loader.timeout.ceiling") ? Long.parseLong(this.config.properties.get("grid.loader.timeout.ceiling")) : 10000,
+                    this.config.properties.containsKey("grid.loader.timeout.multiplier") ? Double.parseDouble(this.config.properties.get("grid.loader.timeout.multiplier")) : 4.0d);
+
+            // initialize the circuit breaker for failing hosts
+            HostCircuitBreaker.init(
+                    this.config.properties.containsKey("grid.loader.circuitBreaker.threshold") ? Integer.parseInt(this.config.properties.get("grid.loader.circuitBreaker.threshold")) : 5,
+                    this.config.properties.containsKey("grid.loader.circuitBreaker.backoff") ? Long.parseLong(this.config.properties.get("grid.loader.circuitBreaker.backoff")) : 30000,
+                    this.config.properties.containsKey("grid.loader.circuitBreaker.maxBackoff") ? Long.parseLong(this.config.properties.get("grid.loader.circuitBreaker.maxBackoff")) : 600000);
+
+            // limit the bandwidth of all content transfers with a weighted share for each crawl
+            BandwidthShaper.init(this.config.properties.containsKey("grid.loader.bandwidth") ? Long.parseLong(this.config.properties.get("grid.loader.bandwidth")) : 0);
+
+            // select the http client engine
+            final String httpEngine = this.config.properties.containsKey("grid.loader.httpEngine") ? this.config.properties.get("grid.loader.httpEngine") : HttpEngine.apache.name();
+            try {
+                HttpEngine.selected = HttpEngine.valueOf(httpEngine.trim().toLowerCase());
+            } catch (final IllegalArgumentException e) {
+                Logger.warn("Loader unknown http engine '" + httpEngine + "', using " + HttpEngine.selected.name());
+            }
+            if (HttpEngine.selected == HttpEngine.jetty || HttpEngine.selected == HttpEngine.http2) {
+                final int jettyThreads = this.config.properties.containsKey("grid.loader.jetty.threads") ? Integer.parseInt(this.config.properties.get("grid.loader.jetty.threads")) : 16;
+                final int jettyConnectionsPerHost = this.config.properties.containsKey("grid.loader.jetty.connectionsPerHost") ? Integer.parseInt(this.config.properties.get("grid.loader.jetty.connectionsPerHost")) : 64;
+                JettyHttpClient.initClient(userAgent, jettyThreads, jettyConnectionsPerHost);
+                if (HttpEngine.selected == HttpEngine.http2) JettyHttpClient.initHttp2Client(userAgent, jettyThreads);
+            }
+
+            // initialize parallel loading of host groups within one loader action
+            final int parallelHosts = this.config.properties.containsKey("grid.loader.parallelHosts") ? Integer.parseInt(this.config.properties.get("grid.loader.parallelHosts")) : 0;
+            ContentLoader.initParallelLoading(parallelHosts);
+
+            // initialize the local throttling, a rate limit for each crawl and host with the delay of the grid control
+            final int throttlingLeaseSize = this.config.properties.containsKey("grid.loader.throttling.leaseSize") ? Integer.parseInt(this.config.properties.get("grid.loader.throttling.leaseSize")) : 1;
+            final long throttlingLeaseTime = this.config.properties.containsKey("grid.loader.throttling.leaseTime") ? Long.parseLong(this.config.properties.get("grid.loader.throttling.leaseTime")) : 10000;
+            ContentLoader.initThrottlingCache(throttlingLeaseSize, throttlingLeaseTime);
+
             // initialize REST server with services
             this.service = new Service(this.config);
 
@@ -93,7 +169,38 @@ public class Loader {
 
             // initiate broker application: listening to indexing requests at RabbitMQ
             final boolean disableHeadless = this.config.properties.containsKey("grid.loader.disableHeadless") ? Boolean.parseBoolean(this.config.properties.get("grid.loader.disableHeadless")) : false;
-            this.brokerApplication = new LoaderListener(LOADER_SERVICE, disableHeadless);
+
+            // the subresources of headless renders are cached for all sessions; this must be done before the web clients are created
+            SharedResourceCache.instance.init(
+                    this.config.properties.containsKey("grid.loader.headless.cache") ? Long.parseLong(this.config.properties.get("grid.loader.headless.cache")) : 268435456L,
+                    this.config.properties.containsKey("grid.loader.headless.cache.scripts") ? Boolean.parseBoolean(this.config.properties.get("grid.loader.headless.cache.scripts")) : true);
+
+            // prepare the reusable web clients for headless rendering
+            WebClientPool.init(
+                    this.config.properties.containsKey("grid.loader.headless.pool") ? Integer.parseInt(this.config.properties.get("grid.loader.headless.pool")) : 4,
+                    this.config.properties.containsKey("grid.loader.headless.pool.maxUses") ? Integer.parseInt(this.config.properties.get("grid.loader.headless.pool.maxUses")) : 100,
+                    !disableHeadless);
+
+            // the detection of static pages which are stored without headless rendering
+            StaticPageDetector.enabled = this.config.properties.containsKey("grid.loader.headless.detectStatic") ? Boolean.parseBoolean(this.config.properties.get("grid.loader.headless.detectStatic")) : true;
+            StaticPageDetector.minText = this.config.properties.containsKey("grid.loader.headless.detectStatic.minText") ? Integer.parseInt(this.config.properties.get("grid.loader.headless.detectStatic.minText")) : 512;
+
+            // the render pool for headless rendering with admission control by the free heap
+            HeadlessRenderer.init(
+                    this.config.properties.containsKey("grid.loader.headless.threads") ? Integer.parseInt(this.config.properties.get("grid.loader.headless.threads")) : Runtime.getRuntime().availableProcessors(),
+                    this.config.properties.containsKey("grid.loader.headless.queueTimeout") ? Long.parseLong(this.config.properties.get("grid.loader.headless.queueTimeout")) : 10000,
+                    this.config.properties.containsKey("grid.loader.headless.memoryEstimate") ? Long.parseLong(this.config.properties.get("grid.loader.headless.memoryEstimate")) : 67108864L,
+                    this.config.properties.containsKey("grid.loader.headless.renderTimeout") ? Long.parseLong(this.config.properties.get("grid.loader.headless.renderTimeout")) : 30000);
+
+            final int configuredConcurrency = this.config.properties.containsKey("grid.loader.concurrency") ? Integer.parseInt(this.config.properties.get("grid.loader.concurrency")) : 0;
+            final int concurrency = configuredConcurrency > 0 ? configuredConcurrency : Runtime.getRuntime().availableProcessors();
+            final boolean adaptiveConcurrency = this.config.properties.containsKey("grid.loader.adaptiveConcurrency") ? Boolean.parseBoolean(this.config.properties.get("grid.loader.adaptiveConcurrency")) : false;
+            final ConcurrencyLimiter limiter = adaptiveConcurrency ? new ConcurrencyLimiter(
+                    1, Runtime.getRuntime().availableProcessors(), concurrency,
+                    this.config.properties.containsKey("grid.loader.adaptiveConcurrency.maxErrorRate") ? Double.parseDouble(this.config.properties.get("grid.loader.adaptiveConcurrency.maxErrorRate")) : 0.5d,
+                    this.config.properties.containsKey("grid.loader.adaptiveConcurrency.maxHeadless") ? Integer.parseInt(this.config.properties.get("grid.loader.adaptiveConcurrency.maxHeadless")) : Runtime.getRuntime().availableProcessors()
+                    ) : null;
+            this.brokerApplication = new LoaderListener(LOADER_SERVICE, disableHeadless, concurrency, limiter);
 
             // initiate service application: listening to REST request
             this.serviceApplication = this.service.newServer(null);
@@ -26,6 +26,7 @@ import ai.susi.mind.SusiAction;
 import ai.susi.mind.SusiThought;
 import net.yacy.grid.YaCyServices;
 import net.yacy.grid.loader.retrieval.ContentLoader;
+import net.yacy.grid.loader.retrieval.LoadPolicy;
 import net.yacy.grid.mcp.AbstractBrokerListener;
 import net.yacy.grid.mcp.BrokerListener;
 import net.yacy.grid.mcp.Service;
@@ -66,6 +67,9 @@ import net.yacy.grid.tools.Memory;
 "crawlingDomMaxCheck": "off",
 "crawlingDomMaxPages": 1000,
 "crawlingQ": "off",
+"loaderMimeMustnotmatch": "video/.*|audio/.*",
+"loaderExtensionMustnotmatch": "iso|dmg|mp4",
+"loaderMaxSize": 104857600,
 "cachePolicy": "if fresh",
 "collection": "user",
 "agentName": "yacybot (yacy.net; crawler from yacygrid.com)",
@@ -103,14 +107,43 @@ import net.yacy.grid.tools.Memory;
 public class LoaderListener extends AbstractBrokerListener implements BrokerListener {
 
     private final boolean disableHeadless;
+    public static ConcurrencyLimiter concurrencyLimiter = null; // null if the number of concurrent actions is fixed
 
-    public LoaderListener(final YaCyServices service, final boolean disableHeadless) {
-         super(Service.instance.config, service, Runtime.getRuntime().availableProcessors());
+    /**
+     * create a loader listener
+     * @param service the service name
+     * @param disableHeadless if true, loading with the headless browser is switched off
+     * @param concurrency the number of broker listener threads, i.e. the maximum number of concurrently processed actions
+     * @param limiter an adaptive limit for the number of concurrently processed actions or null if the number is fixed
+     */
+    public LoaderListener(final YaCyServices service, final boolean disableHeadless, final int concurrency, final ConcurrencyLimiter limiter) {
+         // the broker expects the result of an action when processAction returns, therefore each action occupies
+         // one broker listener thread for its whole processing time
+         super(Service.instance.config, service, concurrency);
          this.disableHeadless = disableHeadless;
+         concurrencyLimiter = limiter;
     }
 
     @Override
     public ActionResult processAction(final SusiAction action, final JSONArray processData, final String processName, final int processNumber) {
+        final ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter == null) return processActionInThread(action, processData, processName, processNumber);
+
+        // wait until the adaptive limit allows another action
+        try {
+            limiter.acquire();
+        } catch (final InterruptedException e) {
+            return ActionResult.FAIL_RETRY;
+        }
+        // the fetches of the urls are recorded in the limiter by the content loader
+        try {
+            return processActionInThread(action, processData, processName, processNumber);
+        } finally {
+            limiter.release();
+        }
+    }
+
+    private ActionResult processActionInThread(final SusiAction action, final JSONArray processData, final String processName, final int processNumber) {
 
         // check short memory status
         if (Memory.shortStatus()) {
@@ -142,7 +175,7 @@ public class LoaderListener extends AbstractBrokerListener implements BrokerList
             ActionResult actionResult = ActionResult.SUCCESS;
             final byte[] b;
             try {
-                final ContentLoader cl = new ContentLoader(action, processData, targetasset.endsWith(".gz"), threadnameprefix, crawlID, depth, crawlingDepth, loaderHeadless, priority);
+                final ContentLoader cl = new ContentLoader(action, processData, targetasset.endsWith(".gz"), threadnameprefix, crawlID, depth, crawlingDepth, loaderHeadless, priority, LoadPolicy.fromCrawl(crawl));
                 b = cl.getContent();
                 actionResult = cl.getResult();
             } catch (final Throwable e) {
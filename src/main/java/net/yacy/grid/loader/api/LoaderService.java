@@ -31,6 +31,7 @@ import net.yacy.grid.http.ObjectAPIHandler;
 import net.yacy.grid.http.Query;
 import net.yacy.grid.http.ServiceResponse;
 import net.yacy.grid.loader.retrieval.ContentLoader;
+import net.yacy.grid.loader.retrieval.LoadPolicy;
 
 /**
  * 
@@ -71,7 +72,7 @@ public class LoaderService extends ObjectAPIHandler implements APIHandler {
 
         // construct a WARC
         String threadname = "api call from " + call.getClientHost();
-        ContentLoader cl = new ContentLoader(action, processData, true, threadname, crawlID, depth, crawlingDepth, loaderHeadless, priority);
+        ContentLoader cl = new ContentLoader(action, processData, true, threadname, crawlID, depth, crawlingDepth, loaderHeadless, priority, LoadPolicy.fromCrawl(crawl));
         byte[] b = cl.getContent();
 
         // store the WARC as asset if wanted
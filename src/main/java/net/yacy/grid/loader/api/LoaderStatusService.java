@@ -0,0 +1,107 @@
+/**
+ *  LoaderStatusService
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.api;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONObject;
+
+import net.yacy.grid.http.APIHandler;
+import net.yacy.grid.http.ObjectAPIHandler;
+import net.yacy.grid.http.Query;
+import net.yacy.grid.http.ServiceResponse;
+import net.yacy.grid.loader.ConcurrencyLimiter;
+import net.yacy.grid.loader.LoaderListener;
+import net.yacy.grid.loader.retrieval.BandwidthShaper;
+import net.yacy.grid.loader.retrieval.BufferPool;
+import net.yacy.grid.loader.retrieval.DnsCache;
+import net.yacy.grid.loader.retrieval.HeadlessRenderer;
+import net.yacy.grid.loader.retrieval.HostCircuitBreaker;
+import net.yacy.grid.loader.retrieval.HostTimeouts;
+import net.yacy.grid.loader.retrieval.LoaderClientConnection;
+import net.yacy.grid.loader.retrieval.RequestCoalescer;
+import net.yacy.grid.loader.retrieval.SharedResourceCache;
+import net.yacy.grid.loader.retrieval.StaticPageDetector;
+import net.yacy.grid.loader.retrieval.WebClientPool;
+
+/**
+ * Live status of the loader internals.
+ *
+ * Test URL:
+ * http://localhost:8200/yacy/grid/loader/status.json
+ */
+public class LoaderStatusService extends ObjectAPIHandler implements APIHandler {
+
+    private static final long serialVersionUID = 8578474303031749880L;
+    public static final String NAME = "status";
+
+    @Override
+    public String getAPIPath() {
+        return "/yacy/grid/loader/" + NAME + ".json";
+    }
+
+    @Override
+    public ServiceResponse serviceImpl(final Query call, final HttpServletResponse response) {
+        final JSONObject json = new JSONObject(true);
+
+        // the adaptive limit of concurrently processed actions
+        final ConcurrencyLimiter limiter = LoaderListener.concurrencyLimiter;
+        if (limiter != null) json.put("concurrency", limiter.toJSON());
+
+        // the connection pool of the apache http client
+        json.put("connectionPool", LoaderClientConnection.getPoolStats());
+
+        // the number of running request deadlines
+        json.put("pendingDeadlines", LoaderClientConnection.pendingDeadlines());
+
+        // the recycled content buffer chunks and the garbage collector activity
+        json.put("bufferPool", BufferPool.toJSON());
+
+        // the estimated timeouts of the hosts
+        json.put("timeouts", HostTimeouts.toJSON());
+
+        // the hosts with an open circuit
+        json.put("circuitBreaker", HostCircuitBreaker.toJSON());
+
+        // the coalescing of concurrent requests for the same url
+        json.put("coalescing", RequestCoalescer.toJSON());
+
+        // the bandwidth share and throughput of each crawl
+        json.put("bandwidth", BandwidthShaper.toJSON());
+
+        // the queue and the durations of headless renders
+        json.put("headless", HeadlessRenderer.toJSON());
+
+        // the html pages which were stored without headless rendering
+        json.put("staticPages", StaticPageDetector.toJSON());
+
+        // the reusable web clients of the headless browser
+        json.put("webClientPool", WebClientPool.toJSON());
+
+        // the subresources which are shared by the headless renders
+        json.put("resourceCache", SharedResourceCache.instance.toJSON());
+
+        // the DNS cache with lookup latencies
+        json.put("dns", DnsCache.instance.toJSON());
+
+        return new ServiceResponse(json);
+    }
+
+}
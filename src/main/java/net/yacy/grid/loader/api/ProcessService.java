@@ -34,6 +34,7 @@ import net.yacy.grid.http.ObjectAPIHandler;
 import net.yacy.grid.http.Query;
 import net.yacy.grid.http.ServiceResponse;
 import net.yacy.grid.loader.retrieval.ContentLoader;
+import net.yacy.grid.loader.retrieval.LoadPolicy;
 import net.yacy.grid.mcp.Service;
 
 /**
@@ -74,7 +75,7 @@ public class ProcessService extends ObjectAPIHandler implements APIHandler {
         final String targetasset = process.getObservation("targetasset");
         final ContentLoader cl = new ContentLoader(
                 process.getActions().get(0), process.getData(), targetasset.endsWith(".gz"), "api call from " + call.getClientHost(),
-                crawlID, depth, crawlingDepth, loaderHeadless, priority);
+                crawlID, depth, crawlingDepth, loaderHeadless, priority, LoadPolicy.fromCrawl(crawl));
         final byte[] b = cl.getContent();
 
         // store the WARC as asset if wanted
@@ -0,0 +1,207 @@
+/**
+ *  BandwidthShaper
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * A node-wide limit for the bandwidth of content transfers with a weighted fair share for each crawl.
+ * Each crawl has a token bucket; the rate of the bucket is the share of the total bandwidth given by the weight of the crawl
+ * among the crawls which transferred content within the last seconds. The weight of a crawl is 1 + priority.
+ * A crawl which is alone on the node gets the whole bandwidth, and the bandwidth of idle crawls is given to the active ones.
+ *
+ * The crawl of a transfer is set for the loading thread with {@link #setCrawl(String, int)} because the content is read
+ * on the thread which started the request. The waits for the share are not part of the request time: the deadline of
+ * the request is postponed by each wait. Crawls without transfer are removed from the statistics when a crawl is set.
+ */
+public class BandwidthShaper {
+
+    private static final long ACTIVE_TIME = 2000;   // a crawl is active if it transferred content within this time
+    private static final long EXPIRY_TIME = 600000; // crawls without transfer for this time are removed from the statistics
+    private static final int MAX_READ = 16 * 1024;  // maximum bytes which are read before the bandwidth is accounted
+
+    private static long bandwidth = 0; // bytes per second for all transfers, 0 means unlimited
+    private static final Map<String, Crawl> crawls = new HashMap<>();
+    private static long lastPurge = System.currentTimeMillis();
+    private static final ThreadLocal<Crawl> currentCrawl = new ThreadLocal<>();
+
+    /**
+     * set the bandwidth limit
+     * @param bytesPerSecond the maximum bytes per second for all content transfers of the node, 0 means unlimited
+     */
+    public static void init(final long bytesPerSecond) {
+        bandwidth = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * set the crawl of the transfers on the current thread
+     * @param id the crawl id or null to remove the crawl
+     * @param priority the priority of the crawl
+     */
+    public static void setCrawl(final String id, final int priority) {
+        if (id == null) {
+            currentCrawl.remove();
+            return;
+        }
+        synchronized (crawls) {
+            final long now = System.currentTimeMillis();
+            if (now - lastPurge > EXPIRY_TIME / 10) {
+                crawls.entrySet().removeIf(entry -> now - entry.getValue().lastUse() > EXPIRY_TIME);
+                lastPurge = now;
+            }
+            Crawl crawl = crawls.get(id);
+            if (crawl == null) {
+                crawl = new Crawl();
+                crawls.put(id, crawl);
+            }
+            crawl.weight = 1 + Math.max(0, priority);
+            crawl.lastSet = now;
+            currentCrawl.set(crawl);
+        }
+    }
+
+    /**
+     * wrap a content stream so its transfer is accounted to the crawl of the current thread and limited to its share
+     * @param in the content stream of a response
+     * @param deadline the deadline of the request which is postponed while the transfer waits for its share, or null
+     * @return the shaped stream
+     */
+    public static InputStream shape(final InputStream in, final DeadlineWheel.Deadline deadline) {
+        Crawl crawl = currentCrawl.get();
+        if (crawl == null) {
+            setCrawl("", 0); // transfers without crawl, i.e. api calls
+            crawl = currentCrawl.get();
+        }
+        return new ShapedInputStream(in, crawl, deadline);
+    }
+
+    /**
+     * account transferred bytes and compute the time the transfer must wait for its share
+     * @return the waiting time in milliseconds
+     */
+    private static long account(final Crawl crawl, final int bytes) {
+        synchronized (crawls) {
+            final long now = System.currentTimeMillis();
+            crawl.account(now, bytes);
+            if (bandwidth <= 0) return 0;
+
+            // the rate is the weighted share among the active crawls
+            int activeWeight = 0;
+            for (final Crawl c: crawls.values()) {
+                if (c == crawl || now - c.lastTransfer < ACTIVE_TIME) activeWeight += c.weight;
+            }
+            final double rate = ((double) bandwidth) * crawl.weight / Math.max(1, activeWeight); // bytes per second
+            final double burst = Math.max(MAX_READ, rate / 2.0d);
+            crawl.tokens = Math.min(burst, crawl.tokens + rate * (now - crawl.lastRefill) / 1000.0d) - bytes;
+            crawl.lastRefill = now;
+            crawl.rate = rate;
+            return crawl.tokens >= 0 ? 0 : (long) (-crawl.tokens * 1000.0d / rate);
+        }
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("bandwidth", bandwidth);
+        final JSONObject c = new JSONObject(true);
+        synchronized (crawls) {
+            final long now = System.currentTimeMillis();
+            crawls.forEach((id, crawl) -> {
+                final JSONObject j = new JSONObject(true);
+                j.put("weight", crawl.weight);
+                j.put("bytes", crawl.bytes);
+                j.put("throughput", now - crawl.lastTransfer < ACTIVE_TIME ? (long) crawl.throughput : 0); // bytes per second
+                j.put("share", bandwidth <= 0 ? 0 : (long) crawl.rate); // bytes per second
+                j.put("waited", crawl.waited); // milliseconds the transfers waited for the share
+                c.put(id.length() == 0 ? "-" : id, j);
+            });
+        }
+        json.put("crawls", c);
+        return json;
+    }
+
+    private static class Crawl {
+        private int weight = 1;
+        private long bytes = 0, waited = 0, lastTransfer = 0, lastSet = 0, lastRefill = System.currentTimeMillis();
+        private double tokens = 0.0d, rate = 0.0d, throughput = 0.0d;
+        private long periodStart = System.currentTimeMillis(), periodBytes = 0;
+
+        private long lastUse() {
+            return Math.max(this.lastSet, this.lastTransfer);
+        }
+
+        private void account(final long now, final int transferred) {
+            this.bytes += transferred;
+            this.lastTransfer = now;
+            this.periodBytes += transferred;
+            if (now - this.periodStart >= 1000) {
+                // smoothed bytes per second, updated once per second
+                final double current = this.periodBytes * 1000.0d / (now - this.periodStart);
+                this.throughput = this.throughput == 0.0d ? current : 0.5d * current + 0.5d * this.throughput;
+                this.periodStart = now;
+                this.periodBytes = 0;
+            }
+        }
+    }
+
+    private static class ShapedInputStream extends FilterInputStream {
+        private final Crawl crawl;
+        private final DeadlineWheel.Deadline deadline;
+
+        private ShapedInputStream(final InputStream in, final Crawl crawl, final DeadlineWheel.Deadline deadline) {
+            super(in);
+            this.crawl = crawl;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) pause(account(this.crawl, 1));
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int c = super.read(b, off, Math.min(len, MAX_READ));
+            if (c > 0) pause(account(this.crawl, c));
+            return c;
+        }
+
+        private void pause(final long millis) throws IOException {
+            if (millis <= 0) return;
+            // the wait for the share is not part of the request time
+            if (this.deadline != null) this.deadline.postpone(millis);
+            synchronized (crawls) {
+                this.crawl.waited += millis;
+            }
+            try {
+                Thread.sleep(millis);
+            } catch (final InterruptedException e) {
+                throw new IOException("interrupted while waiting for bandwidth");
+            }
+        }
+    }
+}
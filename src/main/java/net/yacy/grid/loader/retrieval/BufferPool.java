@@ -0,0 +1,92 @@
+/**
+ *  BufferPool
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * A pool of recycled byte chunks of a fixed size.
+ * Content buffers are composed of these chunks, so reading a response does not allocate a growing array
+ * and the chunks are re-used for the next response when the buffer is closed.
+ */
+public class BufferPool {
+
+    public static final int CHUNK_SIZE = 32 * 1024;
+    public static int maxPooled = 2048; // the number of chunks kept for re-use, 64MB with the default chunk size
+
+    private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger(0);
+    private static final AtomicLong allocated = new AtomicLong(0), recycled = new AtomicLong(0), discarded = new AtomicLong(0);
+
+    /**
+     * get a chunk from the pool or allocate a new one if the pool is empty
+     * @return a chunk of CHUNK_SIZE bytes with undefined content
+     */
+    public static byte[] acquire() {
+        final byte[] chunk = pool.poll();
+        if (chunk == null) {
+            allocated.incrementAndGet();
+            return new byte[CHUNK_SIZE];
+        }
+        pooled.decrementAndGet();
+        recycled.incrementAndGet();
+        return chunk;
+    }
+
+    /**
+     * return a chunk to the pool; the chunk must not be used by the caller afterwards
+     * @param chunk a chunk which was acquired from the pool
+     */
+    public static void release(final byte[] chunk) {
+        if (chunk.length != CHUNK_SIZE) return;
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            discarded.incrementAndGet();
+            return;
+        }
+        pool.offer(chunk);
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("chunkSize", CHUNK_SIZE);
+        json.put("pooled", pooled.get());
+        json.put("maxPooled", maxPooled);
+        json.put("allocated", allocated.get());
+        json.put("recycled", recycled.get());
+        json.put("discarded", discarded.get());
+
+        // the garbage collector activity to compare allocation pressure over time
+        long gcCount = 0, gcTime = 0;
+        for (final GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        json.put("gcCount", gcCount);
+        json.put("gcTime", gcTime);
+        return json;
+    }
+}
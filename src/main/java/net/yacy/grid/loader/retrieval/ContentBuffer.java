@@ -0,0 +1,297 @@
+/**
+ *  ContentBuffer
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A buffer for the content of a response.
+ * The content is kept on the heap up to a threshold; larger content is spilled to a temporary file.
+ * The buffer accepts content up to a maximum size, everything beyond is cut off and the buffer is marked as truncated.
+ * Content on the heap is stored in chunks from the {@link BufferPool}, it is never copied into a growing array.
+ * The buffer must be closed after use to return the chunks to the pool and to delete the temporary file;
+ * streams of the buffer must not be used after closing. A buffer which is shared by several readers is
+ * retained once for each additional reader and released when the last reader has closed it.
+ */
+public class ContentBuffer implements Closeable {
+
+    public static int memoryThreshold = 4 * 1024 * 1024;
+    public static long maxSize = 512L * 1024L * 1024L; // we should not send binaries larger than 512MB to RabbitMQ
+
+    private final int threshold;
+    private final long max;
+    private final List<byte[]> chunks;
+    private int fill; // the number of bytes in the last chunk
+    private boolean pooled; // false if the chunks are not from the pool
+    private File file;
+    private OutputStream fileOut;
+    private long length;
+    private boolean truncated;
+    private final AtomicInteger references;
+
+    public ContentBuffer() {
+        this(memoryThreshold, maxSize);
+    }
+
+    public ContentBuffer(final int threshold, final long max) {
+        this.threshold = threshold;
+        this.max = max;
+        this.chunks = new ArrayList<>();
+        this.fill = 0;
+        this.pooled = true;
+        this.file = null;
+        this.fileOut = null;
+        this.length = 0;
+        this.truncated = false;
+        this.references = new AtomicInteger(1);
+    }
+
+    /**
+     * create a buffer which contains the given bytes
+     * @param b the content; the array is used without copying and must not be changed afterwards
+     * @return a buffer with the content which is never spilled to disk
+     */
+    public static ContentBuffer wrap(final byte[] b) {
+        final ContentBuffer buffer = new ContentBuffer(Integer.MAX_VALUE, Long.MAX_VALUE);
+        buffer.chunks.add(b);
+        buffer.fill = b.length;
+        buffer.pooled = false;
+        buffer.length = b.length;
+        return buffer;
+    }
+
+    /**
+     * append content to the buffer
+     * @return false if the maximum size is reached; the content beyond the maximum size is not appended and the buffer is truncated
+     * @throws IOException if the temporary file cannot be written
+     */
+    public boolean append(final byte[] b, final int off, final int len) throws IOException {
+        int l = len;
+        if (this.length + l > this.max) {
+            l = (int) (this.max - this.length);
+            this.truncated = true;
+        }
+        if (this.fileOut == null && this.length + l > this.threshold) spill();
+        if (this.fileOut != null) {
+            this.fileOut.write(b, off, l);
+        } else {
+            int o = off, r = l;
+            while (r > 0) {
+                final byte[] chunk = writableChunk();
+                final int c = Math.min(r, chunk.length - this.fill);
+                System.arraycopy(b, o, chunk, this.fill, c);
+                this.fill += c;
+                o += c;
+                r -= c;
+            }
+        }
+        this.length += l;
+        return !this.truncated;
+    }
+
+    /**
+     * read a stream into the buffer until the end of the stream or the maximum size is reached.
+     * Content on the heap is read directly into the chunks without an intermediate array.
+     * @param in the stream, it is not closed
+     * @return false if the maximum size is reached and the stream has more content; the buffer is truncated
+     * @throws IOException if the stream cannot be read or the temporary file cannot be written
+     */
+    public boolean readFrom(final InputStream in) throws IOException {
+        while (true) {
+            if (this.fileOut == null && this.length >= this.threshold) spill();
+            if (this.fileOut != null) {
+                final byte[] b = BufferPool.acquire();
+                try {
+                    int c;
+                    while ((c = in.read(b, 0, (int) Math.min(b.length, Math.max(1, this.max - this.length)))) > 0) {
+                        if (!append(b, 0, c)) return false;
+                    }
+                    return true;
+                } finally {
+                    BufferPool.release(b);
+                }
+            }
+            final byte[] chunk = writableChunk();
+            final long remaining = this.max - this.length;
+            final int c = in.read(chunk, this.fill, (int) Math.min(chunk.length - this.fill, Math.max(1, Math.min(remaining, this.threshold - this.length))));
+            if (c <= 0) return true;
+            if (remaining <= 0) {
+                // the stream has more content than the buffer accepts; the probed bytes are not counted
+                this.truncated = true;
+                return false;
+            }
+            this.fill += c;
+            this.length += c;
+        }
+    }
+
+    /**
+     * get the last chunk if it has free space, otherwise add a new chunk from the pool
+     */
+    private byte[] writableChunk() {
+        if (!this.chunks.isEmpty()) {
+            final byte[] last = this.chunks.get(this.chunks.size() - 1);
+            if (this.fill < last.length) return last;
+        }
+        final byte[] chunk = BufferPool.acquire();
+        this.chunks.add(chunk);
+        this.fill = 0;
+        return chunk;
+    }
+
+    /**
+     * move the heap content to a temporary file
+     */
+    private void spill() throws IOException {
+        this.file = ContentLoader.createTempFile("loader", ".content");
+        this.fileOut = new BufferedOutputStream(new FileOutputStream(this.file), BufferPool.CHUNK_SIZE);
+        for (int i = 0; i < this.chunks.size(); i++) {
+            final byte[] chunk = this.chunks.get(i);
+            this.fileOut.write(chunk, 0, i == this.chunks.size() - 1 ? this.fill : chunk.length);
+        }
+        releaseChunks();
+    }
+
+    private void releaseChunks() {
+        if (this.pooled) this.chunks.forEach(BufferPool::release);
+        this.chunks.clear();
+        this.fill = 0;
+    }
+
+    public long length() {
+        return this.length;
+    }
+
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    public boolean isSpilled() {
+        return this.file != null;
+    }
+
+    /**
+     * get the content as stream; this may be called several times
+     * @return a stream of the content
+     * @throws IOException
+     */
+    public InputStream getInputStream() throws IOException {
+        if (this.fileOut == null) return new ChunkInputStream();
+        this.fileOut.flush();
+        return new BufferedInputStream(new FileInputStream(this.file));
+    }
+
+    /**
+     * get a stream which appends to the buffer
+     * @return a stream which throws an IOException if the maximum size is exceeded
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (!append(b, off, len)) throw new IOException("content buffer exceeds " + ContentBuffer.this.max + " bytes");
+            }
+        };
+    }
+
+    /**
+     * get the content as byte array; this should only be used for content which is known to be small,
+     * i.e. html which is given to the headless browser
+     * @return the content
+     * @throws IOException
+     */
+    public byte[] toByteArray() throws IOException {
+        if (this.length > Integer.MAX_VALUE) throw new IOException("content too large for an array: " + this.length);
+        if (!this.pooled && this.chunks.size() == 1 && this.fill == this.chunks.get(0).length) return this.chunks.get(0);
+        final byte[] r = new byte[(int) this.length];
+        int p = 0;
+        try (InputStream in = getInputStream()) {
+            int c;
+            while (p < r.length && (c = in.read(r, p, r.length - p)) > 0) p += c;
+        }
+        return r;
+    }
+
+    /**
+     * a stream over the heap chunks which reads the chunks without copying them
+     */
+    private class ChunkInputStream extends InputStream {
+        private int chunk = 0, pos = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) <= 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            final List<byte[]> chunks = ContentBuffer.this.chunks;
+            while (this.chunk < chunks.size()) {
+                final int end = this.chunk == chunks.size() - 1 ? ContentBuffer.this.fill : chunks.get(this.chunk).length;
+                if (this.pos < end) {
+                    final int c = Math.min(len, end - this.pos);
+                    System.arraycopy(chunks.get(this.chunk), this.pos, b, off, c);
+                    this.pos += c;
+                    return c;
+                }
+                this.chunk++;
+                this.pos = 0;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * register an additional reader of the content; each reader must close the buffer
+     * @return this buffer
+     */
+    public ContentBuffer retain() {
+        this.references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * close the buffer for one reader; the content is released when the last reader has closed the buffer
+     */
+    @Override
+    public void close() {
+        if (this.references.decrementAndGet() > 0) return;
+        releaseChunks();
+        if (this.fileOut != null) try {this.fileOut.close();} catch (final IOException e) {}
+        if (this.file != null) this.file.delete();
+    }
+}
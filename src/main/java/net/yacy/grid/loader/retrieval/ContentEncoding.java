@@ -0,0 +1,126 @@
+/**
+ *  ContentEncoding
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.brotli.dec.BrotliInputStream;
+
+import net.yacy.grid.http.ClientConnection;
+
+/**
+ * Negotiation and decoding of compressed transfers.
+ * The http clients request compressed content and keep the received bytes as they are;
+ * the content is decoded here if the WARC shall contain the decoded content.
+ */
+public class ContentEncoding {
+
+    public static final String ACCEPT_ENCODING = "gzip, deflate, br";
+
+    private static final String CRLF = new String(ClientConnection.CRLF, StandardCharsets.US_ASCII);
+
+    /**
+     * find the content encoding of a response
+     * @param header the response header
+     * @return the lower-case encoding or null if the content is not encoded
+     */
+    public static String getEncoding(final Map<String, List<String>> header) {
+        for (final Map.Entry<String, List<String>> entry: header.entrySet()) {
+            if (!"Content-Encoding".equalsIgnoreCase(entry.getKey())) continue;
+            for (final String v: entry.getValue()) {
+                final String encoding = v.trim().toLowerCase(Locale.ROOT);
+                if (encoding.length() > 0 && !"identity".equals(encoding)) return encoding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * decode the content
+     * @param content the encoded content; this buffer is closed
+     * @param encoding the content encoding, one of gzip, x-gzip, deflate or br
+     * @return a new buffer with the decoded content, limited to the maximum content size
+     * @throws IOException if the encoding is unknown or the content cannot be decoded
+     */
+    public static ContentBuffer decode(final ContentBuffer content, final String encoding) throws IOException {
+        final ContentBuffer decoded = new ContentBuffer();
+        try (InputStream in = getInputStream(content, encoding)) {
+            decoded.readFrom(in);
+        } catch (final IOException e) {
+            decoded.close();
+            throw new IOException("cannot decode " + encoding + " content: " + e.getMessage());
+        } finally {
+            content.close();
+        }
+        return decoded;
+    }
+
+    /**
+     * get a stream of the decoded content without decoding the whole content, i.e. to inspect the beginning of the content
+     * @param content the encoded content; this buffer is not closed
+     * @param encoding the content encoding, one of gzip, x-gzip, deflate or br
+     * @return a stream of the decoded content
+     * @throws IOException if the encoding is unknown
+     */
+    public static InputStream getInputStream(final ContentBuffer content, final String encoding) throws IOException {
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) return new GZIPInputStream(content.getInputStream());
+        if ("br".equals(encoding)) return new BrotliInputStream(content.getInputStream());
+        if ("deflate".equals(encoding)) {
+            // deflate should be zlib-wrapped, but some servers send a raw deflate stream
+            final boolean zlib;
+            try (InputStream in = content.getInputStream()) {
+                final int b0 = in.read(), b1 = in.read();
+                zlib = b0 >= 0 && b1 >= 0 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0;
+            }
+            return new InflaterInputStream(content.getInputStream(), new Inflater(!zlib));
+        }
+        throw new IOException("unknown content encoding " + encoding);
+    }
+
+    /**
+     * patch a response header for decoded content: the Content-Encoding is removed and the Content-Length is set to the decoded length
+     * @param responseHeader the response header as written into the WARC
+     * @param length the length of the decoded content
+     * @return the patched response header
+     */
+    public static String decodedResponseHeader(final String responseHeader, final long length) {
+        final StringBuilder sb = new StringBuilder(responseHeader.length());
+        for (final String line: responseHeader.split(CRLF, -1)) {
+            final String l = line.toLowerCase(Locale.ROOT);
+            if (l.startsWith("content-encoding:")) continue;
+            if (l.startsWith("content-length:")) {
+                sb.append(line.substring(0, line.indexOf(':'))).append(": ").append(length).append(CRLF);
+                continue;
+            }
+            sb.append(line).append(CRLF);
+        }
+        // split with limit -1 returns an empty string after the last CRLF which must not be terminated again
+        sb.setLength(sb.length() - CRLF.length());
+        return sb.toString();
+    }
+}
@@ -19,20 +19,31 @@
 
 package net.yacy.grid.loader.retrieval;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,7 +55,9 @@ import ai.susi.mind.SusiAction;
 import ai.susi.mind.SusiAction.RenderType;
 import net.yacy.grid.io.index.CrawlerDocument;
 import net.yacy.grid.io.index.CrawlerDocument.Status;
+import net.yacy.grid.loader.ConcurrencyLimiter;
 import net.yacy.grid.loader.JwatWarcWriter;
+import net.yacy.grid.loader.LoaderListener;
 import net.yacy.grid.mcp.BrokerListener.ActionResult;
 import net.yacy.grid.mcp.Service;
 import net.yacy.grid.tools.Classification;
@@ -56,12 +69,37 @@ public class ContentLoader {
 
     private final static Pattern charsetPattern = Pattern.compile("charset=([^\\s]+)");
 
+    // parallel loading: urls of all actions are handed to a host-keyed scheduler which parks each url until
+    // the throttling for its host has passed. The scheduler workers are shared by all loader actions of this node
+    // and bound the number of concurrently loaded hosts. If no scheduler is initialized, all urls of an action
+    // are loaded sequentially on the calling thread.
+    private static PolitenessScheduler scheduler = null;
+
+    public static void initParallelLoading(final int threads) {
+        if (scheduler != null) scheduler.stop();
+        scheduler = threads > 0 ? new PolitenessScheduler(Executors.newFixedThreadPool(threads)) : null;
+    }
+
+    // the throttling is a local rate limit with the delay of the grid control, by default every url is checked with the grid control
+    private static ThrottlingCache throttlingCache = new ThrottlingCache(1, 0);
+
+    public static void initThrottlingCache(final int leaseSize, final long leaseTime) {
+        throttlingCache = new ThrottlingCache(leaseSize, leaseTime);
+    }
+
+    // if true, compressed content is written to the WARC as it was transferred, with the original Content-Encoding header.
+    // Otherwise the content is decoded and the response header is patched to describe the decoded content.
+    public static boolean storeEncodedContent = false;
+
+    // the space in the WARC which is kept free for the headers of a record and the buffer of the WARC writer
+    private final static long RECORD_MARGIN = 64 * 1024;
+
     private byte[] content;
     private ActionResult result;
 
     public ContentLoader(
             final SusiAction action, final JSONArray data, final boolean compressed, final String threadnameprefix,
-            final String id, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority) {
+            final String id, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority, final LoadPolicy policy) {
         this.content = new byte[0];
         this.result = ActionResult.FAIL_IRREVERSIBLE;
 
@@ -74,29 +112,46 @@ public class ContentLoader {
         final JSONArray urls = action.getArrayAttr("urls");
         final List<String> urlss = new ArrayList<>();
         urls.forEach(u -> urlss.add(((String) u)));
+
+        // resolve the hosts in the background while the urls wait for their turn
+        final Set<String> hosts = new HashSet<>();
+        urlss.forEach(u -> {if (u.startsWith("http")) hosts.add(getHost(u));});
+        DnsCache.instance.prefetch(hosts);
+
         final byte[] warcPayload = data.toString(2).getBytes(StandardCharsets.UTF_8);
 
         // start loading
         Thread.currentThread().setName(threadnameprefix + " loading " + urlss.toString());
 
-        // construct a WARC
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // construct a WARC; the WARC is assembled in pooled chunks, spilled to a temporary file when it is large,
+        // and copied only once into the asset array. The WARC is bounded by the maximum size of an asset; the content
+        // of a url which does not fit any more is cut off and its record is marked as truncated.
+        final long warcLimit = Math.min(ContentBuffer.maxSize, Integer.MAX_VALUE - 8);
+        final ContentBuffer warc = new ContentBuffer(ContentBuffer.memoryThreshold, warcLimit);
+        final OutputStream out = warc.getOutputStream();
         try {
             final WarcWriter ww = ContentLoader.initWriter(out, warcPayload, compressed);
-            final Map<String, ActionResult> errors = ContentLoader.load(ww, urlss, threadnameprefix, id, depth, crawlingDepth, loaderHeadless, priority);
+            final Map<String, ActionResult> errors = ContentLoader.load(ww, () -> warcLimit - warc.length(), urlss, threadnameprefix, id, depth, crawlingDepth, loaderHeadless, priority, policy);
+            // the urls which failed are marked in their crawler documents; the WARC of the other urls is sent anyway
+            errors.forEach((u, c) -> Logger.debug(this.getClass(), "Loader - cannot load: " + u + " - " + c));
             this.result = ActionResult.SUCCESS;
-            errors.forEach((u, c) -> {
-                Logger.debug(this.getClass(), "Loader - cannot load: " + u + " - " + c);
-                if (c == ActionResult.FAIL_RETRY && this.result == ActionResult.SUCCESS) this.result = ActionResult.FAIL_RETRY;
-                if (c == ActionResult.FAIL_IRREVERSIBLE) this.result = ActionResult.FAIL_IRREVERSIBLE;
-            });
         } catch (final IOException e) {
             Logger.warn(this.getClass(), "ContentLoader WARC writer init problem", e);
+        }
+        try {
+            if (warc.isTruncated()) {
+                // the records are bounded when they are written, this happens only if a record header exceeds the margin
+                Logger.warn(this.getClass(), "ContentLoader WARC exceeds " + warcLimit + " bytes, not sent for " + urlss.toString());
+                this.result = ActionResult.FAIL_IRREVERSIBLE;
+            } else {
+                this.content = warc.toByteArray();
+            }
+        } catch (final IOException e) {
+            Logger.warn(this.getClass(), "ContentLoader WARC too large", e);
+            this.result = ActionResult.FAIL_IRREVERSIBLE;
         } finally {
-            if (out != null) try {out.close();} catch (final IOException e) {}
+            warc.close();
         }
-        this.content = ((ByteArrayOutputStream) out).toByteArray();
-        this.result = ActionResult.SUCCESS;
     }
 
 
@@ -123,8 +178,8 @@ public class ContentLoader {
     }
 
     private static Map<String, ActionResult> load(
-            final WarcWriter warcWriter, final List<String> urls, final String threadName,
-            final String id, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority) throws IOException {
+            final WarcWriter warcWriter, final LongSupplier warcRoom, final List<String> urls, final String threadName,
+            final String id, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority, final LoadPolicy policy) throws IOException {
 
         // this is here for historical reasons, we actually should have all urls normalized
         final List<String> fixedURLs = new ArrayList<>();
@@ -139,53 +194,44 @@ public class ContentLoader {
         final Map<String, CrawlerDocument> crawlerDocuments = CrawlerDocument.loadBulk(Service.instance.config, Service.instance.config.gridIndex, urlmap.values());
 
         // load content
-        final Map<String, ActionResult> errors = new LinkedHashMap<>();
-        fixedURLs.forEach(url -> {
-
-            // do loader throttling here
-            long throttling = 250;
-            try {
-                throttling = Service.instance.config.gridControl.checkThrottling(id, url, depth, crawlingDepth, loaderHeadless, priority);
-            } catch (final IOException e1) {}
-            Thread.currentThread().setName(threadName + " loading " + url.toString() + ", throttling = " + throttling);
-            try {Thread.sleep(throttling);} catch (final InterruptedException e) {}
-
-            // start loading
+        final Map<String, ActionResult> errors = Collections.synchronizedMap(new LinkedHashMap<>());
+        final PolitenessScheduler politenessScheduler = scheduler;
+        if (politenessScheduler == null) {
+            fixedURLs.forEach(url -> {
+                final long throttling = checkThrottling(url, id, depth, crawlingDepth, loaderHeadless, priority);
+                Thread.currentThread().setName(threadName + " loading " + url.toString() + ", throttling = " + throttling);
+                try {Thread.sleep(throttling);} catch (final InterruptedException e) {}
+                loadURL(warcWriter, warcRoom, url, threadName, id, priority, loaderHeadless, policy, crawlerDocuments.get(urlmap.get(url)), errors);
+            });
+        } else {
+            // the urls are parked in the scheduler until their host is due, no thread waits for the throttling
+            final CountDownLatch latch = new CountDownLatch(fixedURLs.size());
+            fixedURLs.forEach(url -> politenessScheduler.schedule(
+                    getHost(url),
+                    () -> checkThrottling(url, id, depth, crawlingDepth, loaderHeadless, priority),
+                    () -> {
+                        try {
+                            Thread.currentThread().setName(threadName + " loading " + url.toString());
+                            loadURL(warcWriter, warcRoom, url, threadName, id, priority, loaderHeadless, policy, crawlerDocuments.get(urlmap.get(url)), errors);
+                        } finally {
+                            latch.countDown();
+                        }
+                    },
+                    () -> {
+                        // the scheduler was stopped before the url was loaded
+                        final CrawlerDocument crawlerDocument = crawlerDocuments.get(urlmap.get(url));
+                        if (crawlerDocument != null) {
+                            crawlerDocument.setStatus(Status.load_failed).setStatusDate(new Date()).setComment("load fail: loader stopped");
+                        }
+                        errors.put(url, ActionResult.FAIL_RETRY);
+                        latch.countDown();
+                    }));
             try {
-                // load entry from crawler index
-                final String urlid = urlmap.get(url);
-                final CrawlerDocument crawlerDocument = crawlerDocuments.get(urlid);
-                //assert crawlerDocument != null;
-
-                // load content from the network
-                final long t = System.currentTimeMillis();
-                try {
-                    boolean success = false;
-                    if (url.startsWith("http")) success = loadHTTP(warcWriter, url, threadName, loaderHeadless);
-                    else  if (url.startsWith("ftp")) loadFTP(warcWriter, url);
-                    else  if (url.startsWith("smb")) loadSMB(warcWriter, url);
-
-                    // write success status
-                    if (success && crawlerDocument != null) {
-                        final long load_time = System.currentTimeMillis() - t;
-                        crawlerDocument.setStatus(Status.loaded).setStatusDate(new Date()).setComment("load time: " + load_time + " milliseconds");
-                        // crawlerDocument.store(Data.gridIndex); we bulk-store this later
-                        // check with http://localhost:9200/crawler/_search?q=status_s:loaded
-                    }
-                } catch (final IOException e) {
-                    // write fail status
-                    if (crawlerDocument != null) {
-                        final long load_time = System.currentTimeMillis() - t;
-                        crawlerDocument.setStatus(Status.load_failed).setStatusDate(new Date()).setComment("load fail: '" + e.getMessage() + "' after " + load_time + " milliseconds");
-                        // crawlerDocument.store(Data.gridIndex); we bulk-store this later
-                        // check with http://localhost:9200/crawler/_search?q=status_s:load_failed
-                    }
-                }
-            } catch (final Throwable e) {
-                Logger.warn("ContentLoader cannot load " + url + " - " + e.getMessage());
-                errors.put(url, ActionResult.FAIL_IRREVERSIBLE);
+                latch.await();
+            } catch (final InterruptedException e) {
+                Logger.warn("ContentLoader waiting for scheduled loads interrupted", e);
             }
-        });
+        }
 
         // bulk-store the crawler documents
         try {
@@ -196,6 +242,100 @@ public class ContentLoader {
         return errors;
     }
 
+    private static long checkThrottling(final String url, final String id, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority) {
+        return throttlingCache.checkThrottling(url, getHost(url), id, depth, crawlingDepth, loaderHeadless, priority);
+    }
+
+    private static void loadURL(
+            final WarcWriter warcWriter, final LongSupplier warcRoom, final String url, final String threadName, final String id, final int priority,
+            final boolean loaderHeadless, final LoadPolicy policy, final CrawlerDocument crawlerDocument, final Map<String, ActionResult> errors) {
+
+        // start loading; the transfer is accounted to the bandwidth share of the crawl
+        BandwidthShaper.setCrawl(id, priority);
+        try {
+            // load content from the network
+            final long t = System.currentTimeMillis();
+            try {
+                LoadResult result = LoadResult.failed;
+                if (url.startsWith("http")) result = loadHTTP(warcWriter, warcRoom, url, threadName, loaderHeadless, policy, crawlerDocument);
+                else  if (url.startsWith("ftp")) loadFTP(warcWriter, url);
+                else  if (url.startsWith("smb")) loadSMB(warcWriter, url);
+
+                // write success status
+                if (result == LoadResult.loaded && crawlerDocument != null) {
+                    final long load_time = System.currentTimeMillis() - t;
+                    crawlerDocument.setStatus(Status.loaded).setStatusDate(new Date()).setComment("load time: " + load_time + " milliseconds");
+                    // crawlerDocument.store(Data.gridIndex); we bulk-store this later
+                    // check with http://localhost:9200/crawler/_search?q=status_s:loaded
+                }
+                if (result == LoadResult.unchanged && crawlerDocument != null) {
+                    final long load_time = System.currentTimeMillis() - t;
+                    crawlerDocument.setStatus(Status.loaded).setStatusDate(new Date()).setComment("not modified (304), check time: " + load_time + " milliseconds");
+                }
+            } catch (final HostCircuitBreaker.CircuitOpenException e) {
+                // the host failed repeatedly; the url is not loaded now and is marked as failed, the other urls of the action are not affected
+                if (crawlerDocument != null) {
+                    crawlerDocument.setStatus(Status.load_failed).setStatusDate(new Date()).setComment("load fail: '" + e.getMessage() + "'");
+                }
+                errors.put(url, ActionResult.FAIL_RETRY);
+            } catch (final LoadPolicy.SkippedException e) {
+                // write skip status; the crawler document has no own status for skipped documents, they are rejected with a skip comment
+                if (crawlerDocument != null) {
+                    final long load_time = System.currentTimeMillis() - t;
+                    crawlerDocument.setStatus(Status.rejected).setStatusDate(new Date()).setComment("skipped: " + e.getMessage() + " after " + load_time + " milliseconds");
+                }
+            } catch (final IOException e) {
+                // write fail status
+                if (crawlerDocument != null) {
+                    final long load_time = System.currentTimeMillis() - t;
+                    crawlerDocument.setStatus(Status.load_failed).setStatusDate(new Date()).setComment("load fail: '" + e.getMessage() + "' after " + load_time + " milliseconds");
+                    // crawlerDocument.store(Data.gridIndex); we bulk-store this later
+                    // check with http://localhost:9200/crawler/_search?q=status_s:load_failed
+                }
+            }
+        } catch (final Throwable e) {
+            Logger.warn("ContentLoader cannot load " + url + " - " + e.getMessage());
+            if (crawlerDocument != null) {
+                crawlerDocument.setStatus(Status.load_failed).setStatusDate(new Date()).setComment("load fail: '" + e.getMessage() + "'");
+            }
+            errors.put(url, ActionResult.FAIL_IRREVERSIBLE);
+        } finally {
+            BandwidthShaper.setCrawl(null, 0);
+        }
+    }
+
+    /**
+     * limit a stream to a number of bytes
+     */
+    private static InputStream limit(final InputStream in, final long limit) {
+        return new FilterInputStream(in) {
+            private long remaining = limit;
+            @Override
+            public int read() throws IOException {
+                if (this.remaining <= 0) return -1;
+                final int b = super.read();
+                if (b >= 0) this.remaining--;
+                return b;
+            }
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (this.remaining <= 0) return -1;
+                final int c = super.read(b, off, (int) Math.min(len, this.remaining));
+                if (c > 0) this.remaining -= c;
+                return c;
+            }
+        };
+    }
+
+    private static String getHost(final String url) {
+        try {
+            final String host = new MultiProtocolURL(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (final MalformedURLException e) {
+            return "";
+        }
+    }
+
     private static void loadFTP(final WarcWriter warcWriter, final String url) throws IOException {
 
     }
@@ -204,38 +344,88 @@ public class ContentLoader {
 
     }
 
-    private static boolean loadHTTP(final WarcWriter warcWriter, final String url, final String threadName, final boolean useHeadlessLoader) throws IOException {// check short memory status
+    /**
+     * the outcome of loading a url
+     */
+    private enum LoadResult {
+        loaded,    // the content was loaded and written to the WARC
+        unchanged, // the content was not modified since the last load; a revisit record was written to the WARC
+        failed;    // nothing was written to the WARC
+    }
+
+    // keys of the validators in the crawler document which are used for conditional requests
+    private final static String ETAG_KEY = "etag_s";
+    private final static String LAST_MODIFIED_KEY = "last_modified_s";
+
+    private static LoadResult loadHTTP(final WarcWriter warcWriter, final LongSupplier warcRoom, final String url, final String threadName, final boolean useHeadlessLoader, final LoadPolicy policy, final CrawlerDocument crawlerDocument) throws IOException {// check short memory status
         final Date loaddate = new Date();
-        byte[] content = null;
+        ContentBuffer content = null;
         String requestHeaders = null;
         String responseHeaders = null;
         final MultiProtocolURL u = new MultiProtocolURL(url);
 
+        // load the content with a single GET request; the response is used to decide about headless loading
+        // and for the normal loading. If a previous load has left validators, the request is conditional.
+        // The load policy of the crawl may reject the url before the request or the response before the content is transferred.
+        if (policy != null) policy.checkURL(url);
+        // the WARC of the action may already be full; then the url is not loaded
+        if (warcRoom.getAsLong() <= RECORD_MARGIN) throw new IOException("no room in the WARC for " + url);
+        // Concurrent requests for the same url from other actions share one fetch.
+        final long fetchStart = System.currentTimeMillis();
+        final HttpClient ac;
+        try {
+            ac = RequestCoalescer.connect(url, getConditionalHeaders(crawlerDocument), policy);
+        } catch (final HostCircuitBreaker.HostFailureException e) {
+            recordFetch(System.currentTimeMillis() - fetchStart, true);
+            throw e;
+        }
+        recordFetch(System.currentTimeMillis() - fetchStart, false);
+        if (ac.getStatusCode() == 304) {
+            // the document is unchanged: write a revisit record instead of the content
+            synchronized (warcWriter) {
+                if (warcRoom.getAsLong() < RECORD_MARGIN) throw new IOException("no room in the WARC for " + url);
+                JwatWarcWriter.writeRequest(warcWriter, url, null, loaddate, null, null, ac.getRequestHeader().getBytes(StandardCharsets.UTF_8));
+                Logger.info("ContentLoader writing WARC revisit for " + url);
+                JwatWarcWriter.writeRevisit(warcWriter, url, null, loaddate, null, null, ac.getResponseHeader().getBytes(StandardCharsets.UTF_8));
+            }
+            setValidators(crawlerDocument, ac.getHeader());
+            return LoadResult.unchanged;
+        }
+        if (ac.getStatusCode() != 200 || ac.getContent() == null) return LoadResult.failed;
+        final String encoding = ContentEncoding.getEncoding(ac.getHeader());
+
         if (useHeadlessLoader) {
             // using the headless loader only makes sense in certain situations:
             // we must make sure that the content is actually html, othwewise there is
             // no point in usage of the headless loader and we would fall back to normal loading.
+            // Not all content that is actually html requires an html extension, we also check the mime type
+            // and, if the mime type is missing or generic, the first bytes of the content.
             String ext = MultiProtocolURL.getFileExtension(u.getFileName());
-            boolean isHtml = Classification.isHtmlExtension(ext);
-
-            // not all content that is actually html requires an text extension, we also check the mime type by using a head request
-            if (!isHtml) {
-                LoaderClientConnection ac = new LoaderClientConnection(url, true);
-                String mime = ac.getMime();
-                isHtml = mime.endsWith("/html") || mime.endsWith("/xhtml+xml");
-            }
+            boolean isHtml = Classification.isHtmlExtension(ext) || ContentSniffer.isHtml(ac.getMime(), ac.getContent(), encoding);
+            // pages which do not need javascript to show their content are not rendered
+            if (isHtml && !StaticPageDetector.needsRendering(getHost(url), ac.getContent(), encoding)) isHtml = false;
 
             // finally we use the headless loader to get the content
             if (isHtml) try {
-                // use htmlunit to load this
-                final HtmlUnitLoader htmlUnitLoader = new HtmlUnitLoader(url, threadName);
+                // use htmlunit to load this; the render runs in the render pool if there is enough memory.
+                // The browser gets the content of the GET request as main document and loads only the subresources.
+                // The page is rendered at the url of the response, which is the target of the redirects of the request,
+                // so the browser resolves relative links against the same base as the server did.
+                final ContentBuffer document = encoding == null ? ac.getContent().retain() : ContentEncoding.decode(ac.getContent().retain(), encoding);
+                final HtmlUnitLoader htmlUnitLoader;
+                try {
+                    htmlUnitLoader = HeadlessRenderer.render(ac.getURL(), threadName, ac.getHeader(), document);
+                } finally {
+                    document.close();
+                }
                 final String xml = htmlUnitLoader.getXml();
 
                 requestHeaders = htmlUnitLoader.getRequestHeaders();
                 responseHeaders = htmlUnitLoader.getResponseHeaders();
 
                 // we consider that the resulting charset should be UTF_8
-                content = xml.getBytes(StandardCharsets.UTF_8);
+                content = ContentBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8));
+                ac.getContent().close();
 
                 // However, the original Content-Type may denote a different charset
                 // Therefore we must patch that charset now in the response header
@@ -250,46 +440,108 @@ public class ContentLoader {
                         responseHeaders = sb.toString();
                     }
                 }
+            } catch (final HeadlessRenderer.QueueTimeoutException e) {
+                // the render pool is busy or the heap is too full, the content of the GET request is used
+                Logger.info("ContentLoader - " + e.getMessage() + ", using the loaded content");
             } catch (final Throwable e) {
                 // do nothing here, input stream is not set
                 final String cause = e == null ? "null" : e.getMessage();
                 if (cause != null && cause.indexOf("404") >= 0) {
+                    ac.getContent().close();
                     throw new IOException("" + url + " fail: " + cause);
                 }
-                Logger.debug("Loader - HtmlUnit failed (will retry): " + cause);
+                Logger.debug("Loader - HtmlUnit failed (will use the loaded content): " + cause);
             }
         }
 
-        // Here we may not have loaded the content because of not-required headless loading or
-        // because headless loading has failed. Do a normal loading:
+        // Here we may not have rendered the content because of not-required headless loading or
+        // because headless loading has failed. Then we use the content of the GET request;
+        // no further request is needed.
         if (content == null) {
-            // do another http request. This can either happen because mime type is not html
-            // or it was html and HtmlUnit has failed - we retry the normal way here.
-
-            LoaderClientConnection ac = new LoaderClientConnection(url, false);
-            final int status = ac.getStatusCode();
-            if (status != 200) return false;
-
             requestHeaders = ac.getRequestHeader();
             responseHeaders = ac.getResponseHeader();
-
             content = ac.getContent();
+
+            // the content is transferred compressed if the server supports that
+            if (encoding != null && !storeEncodedContent) {
+                content = ContentEncoding.decode(content, encoding);
+                responseHeaders = ContentEncoding.decodedResponseHeader(responseHeaders, content.length());
+            }
         }
 
-        if (content == null || content.length == 0) return false;
+        if (content == null) return LoadResult.failed;
+        try {
+            if (content.length() == 0) return LoadResult.failed;
+
+            // add the response header before the content; the content is streamed from the buffer
+            final byte[] requestHeaderBytes = requestHeaders.getBytes(StandardCharsets.UTF_8);
+            final byte[] responseHeaderBytes = responseHeaders.getBytes(StandardCharsets.UTF_8);
+
+            // the writer may be shared by concurrently loading scheduler workers; request and response must be written as a pair
+            synchronized (warcWriter) {
+                // the WARC of the action is bounded; content which does not fit is cut off and the record is marked as truncated
+                final long room = warcRoom.getAsLong() - RECORD_MARGIN - requestHeaderBytes.length - responseHeaderBytes.length;
+                if (room <= 0) throw new IOException("no room in the WARC for " + url);
+                final long contentLength = Math.min(content.length(), room);
+                final boolean truncated = content.isTruncated() || contentLength < content.length();
+                final long length = responseHeaderBytes.length + contentLength;
+                JwatWarcWriter.writeRequest(warcWriter, url, null, loaddate, null, null, requestHeaderBytes);
+                Logger.info("ContentLoader writing WARC for " + url + " - " + length + " bytes" + (truncated ? ", truncated" : ""));
+                try (InputStream payload = new SequenceInputStream(new ByteArrayInputStream(responseHeaderBytes), limit(content.getInputStream(), contentLength))) {
+                    JwatWarcWriter.writeResponse(warcWriter, url, null, loaddate, null, null, payload, length, truncated);
+                }
+            }
+        } finally {
+            content.close();
+        }
+        setValidators(crawlerDocument, ac.getHeader());
 
-        JwatWarcWriter.writeRequest(warcWriter, url, null, loaddate, null, null, requestHeaders.getBytes(StandardCharsets.UTF_8));
+        return LoadResult.loaded;
+    }
 
-        // add the request header before the content
-        final ByteArrayOutputStream r = new ByteArrayOutputStream();
-        r.write(responseHeaders.getBytes(StandardCharsets.UTF_8));
-        r.write(content);
-        content = r.toByteArray();
+    /**
+     * report the fetch of a url to the adaptive concurrency limit; requests which are rejected by the load policy,
+     * answered with an error status or not done because of an open circuit are not reported
+     * @param fetchTime the time of the request until the content was read in milliseconds
+     * @param failed true if the host did not answer
+     */
+    private static void recordFetch(final long fetchTime, final boolean failed) {
+        final ConcurrencyLimiter limiter = LoaderListener.concurrencyLimiter;
+        if (limiter != null) limiter.record(fetchTime, failed);
+    }
 
-        Logger.info("ContentLoader writing WARC for " + url + " - " + content.length + " bytes");
-        JwatWarcWriter.writeResponse(warcWriter, url, null, loaddate, null, null, content);
+    /**
+     * compute the request headers for a conditional request from the validators of the previous load
+     * @param crawlerDocument the crawler document of the url or null
+     * @return the request headers or null if there are no validators
+     */
+    private static Map<String, String> getConditionalHeaders(final CrawlerDocument crawlerDocument) {
+        if (crawlerDocument == null) return null;
+        final String etag = crawlerDocument.optString(ETAG_KEY, "");
+        final String lastModified = crawlerDocument.optString(LAST_MODIFIED_KEY, "");
+        if (etag.length() == 0 && lastModified.length() == 0) return null;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        if (etag.length() > 0) headers.put("If-None-Match", etag);
+        if (lastModified.length() > 0) headers.put("If-Modified-Since", lastModified);
+        return headers;
+    }
 
-        return true;
+    /**
+     * store the validators of a response in the crawler document
+     * @param crawlerDocument the crawler document of the url or null
+     * @param header the response header
+     */
+    private static void setValidators(final CrawlerDocument crawlerDocument, final Map<String, List<String>> header) {
+        if (crawlerDocument == null || header == null) return;
+        String etag = null, lastModified = null;
+        for (final Map.Entry<String, List<String>> entry: header.entrySet()) {
+            if (entry.getValue().isEmpty()) continue;
+            if ("ETag".equalsIgnoreCase(entry.getKey())) etag = entry.getValue().get(0);
+            if ("Last-Modified".equalsIgnoreCase(entry.getKey())) lastModified = entry.getValue().get(0);
+        }
+        // a 304 response may omit the validators; then we keep the previous ones
+        if (etag != null) crawlerDocument.put(ETAG_KEY, etag);
+        if (lastModified != null) crawlerDocument.put(LAST_MODIFIED_KEY, lastModified);
     }
 
     private static String getTestWarcContent(String url, boolean loaderHeadless) {
@@ -297,7 +549,7 @@ public class ContentLoader {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
             WarcWriter warcWriter = ContentLoader.initWriter(out, warcPayload, false);
-            loadHTTP(warcWriter, url, "test", loaderHeadless);
+            loadHTTP(warcWriter, () -> Long.MAX_VALUE, url, "test", loaderHeadless, null, null);
             warcWriter.close();
             out.close();
             String b = new String(out.toByteArray(), StandardCharsets.UTF_8);
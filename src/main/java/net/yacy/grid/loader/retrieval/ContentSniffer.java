@@ -0,0 +1,92 @@
+/**
+ *  ContentSniffer
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Decide from the response header and the first bytes of the content if a response is a html page.
+ * The mime type of the response is trusted if it is specific; for a missing or generic mime type
+ * the beginning of the content is checked for html markup, similar to the mime sniffing of browsers.
+ */
+public class ContentSniffer {
+
+    private static final int SNIFF_LENGTH = 512;
+    private static final String[] HTML_PATTERNS = new String[]{"<!doctype html", "<html", "<head", "<body", "<script", "<title", "<iframe", "<!--", "<meta", "<p>", "<div"};
+
+    /**
+     * @param mime the mime type from the Content-Type response header, may be empty
+     * @return true if the mime type denotes html
+     */
+    public static boolean isHtmlMime(final String mime) {
+        return mime.endsWith("/html") || mime.endsWith("/xhtml+xml");
+    }
+
+    /**
+     * @param mime the mime type from the Content-Type response header, may be empty
+     * @return true if the mime type does not tell what the content is
+     */
+    private static boolean isGenericMime(final String mime) {
+        return mime.length() == 0 || "text/plain".equals(mime) || "application/octet-stream".equals(mime) || "unknown/unknown".equals(mime);
+    }
+
+    /**
+     * decide if a response is html
+     * @param mime the mime type from the Content-Type response header, may be null
+     * @param content the content of the response
+     * @param encoding the content encoding or null if the content is not encoded
+     * @return true if the response is a html page
+     */
+    public static boolean isHtml(final String mime, final ContentBuffer content, final String encoding) {
+        final String m = mime == null ? "" : mime.trim().toLowerCase(Locale.ROOT);
+        if (isHtmlMime(m)) return true;
+        if (!isGenericMime(m) || content == null || content.length() == 0) return false;
+        try (InputStream in = encoding == null ? content.getInputStream() : ContentEncoding.getInputStream(content, encoding)) {
+            final byte[] b = new byte[SNIFF_LENGTH];
+            int p = 0, c;
+            while (p < b.length && (c = in.read(b, p, b.length - p)) > 0) p += c;
+            return isHtml(b, p);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * check the beginning of a content for html markup
+     * @param b the first bytes of the content
+     * @param length the number of valid bytes
+     * @return true if the first non-whitespace characters are a html tag
+     */
+    public static boolean isHtml(final byte[] b, final int length) {
+        int p = 0;
+        // skip a UTF-8 byte order mark and whitespace
+        if (length >= 3 && (b[0] & 0xff) == 0xef && (b[1] & 0xff) == 0xbb && (b[2] & 0xff) == 0xbf) p = 3;
+        while (p < length && (b[p] == ' ' || b[p] == '\t' || b[p] == '\n' || b[p] == '\r' || b[p] == '\f')) p++;
+        if (p >= length || b[p] != '<') return false;
+        final String start = new String(b, p, Math.min(length - p, 16), StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        for (final String pattern: HTML_PATTERNS) {
+            if (start.startsWith(pattern)) return true;
+        }
+        return false;
+    }
+}
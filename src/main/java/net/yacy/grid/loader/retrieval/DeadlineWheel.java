@@ -0,0 +1,176 @@
+/**
+ *  DeadlineWheel
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A hashed timing wheel for request deadlines.
+ * Deadlines are put into the bucket of the tick at which they expire; a single thread advances the wheel
+ * one bucket per tick and runs the expired deadlines. Scheduling and cancelling are constant-time operations
+ * and a cancelled deadline is removed from its bucket immediately, so it does not keep its task reachable.
+ * A postponed deadline is moved to the bucket of its new expiry tick.
+ */
+public class DeadlineWheel {
+
+    private final long tickMillis;
+    private final List<Set<Deadline>> buckets;
+    private final AtomicInteger pending;
+    private volatile long tick;
+
+    public DeadlineWheel(final long tickMillis, final int size) {
+        this(tickMillis, size, true);
+    }
+
+    /**
+     * create a wheel
+     * @param tickMillis the time of one tick in milliseconds
+     * @param size the number of buckets
+     * @param start if false, no worker thread is started and the wheel is only advanced with advance()
+     */
+    DeadlineWheel(final long tickMillis, final int size, final boolean start) {
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) this.buckets.add(ConcurrentHashMap.newKeySet());
+        this.pending = new AtomicInteger(0);
+        this.tick = 0;
+        if (!start) return;
+        final Thread worker = new Thread(this::run, "DeadlineWheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * schedule a task
+     * @param task the task which is run when the deadline expires
+     * @param delayMillis the time in milliseconds until the deadline expires
+     * @return the deadline which must be cancelled if the task shall not run
+     */
+    public Deadline schedule(final Runnable task, final long delayMillis) {
+        final long ticks = ticks(delayMillis);
+        // the tick must not advance between reading it and adding the deadline to its bucket; otherwise the worker
+        // may already have passed the bucket and the deadline would expire one turn of the wheel too late
+        synchronized (this.buckets) {
+            final long expiryTick = this.tick + ticks;
+            final Deadline deadline = new Deadline(task, this.buckets.get((int) (expiryTick % this.buckets.size())), expiryTick);
+            this.pending.incrementAndGet();
+            deadline.bucket.add(deadline);
+            return deadline;
+        }
+    }
+
+    private long ticks(final long delayMillis) {
+        return Math.max(1, (delayMillis + this.tickMillis - 1) / this.tickMillis);
+    }
+
+    /**
+     * @return the number of deadlines which are neither expired nor cancelled
+     */
+    public int pending() {
+        return this.pending.get();
+    }
+
+    private void run() {
+        long next = System.currentTimeMillis() + this.tickMillis;
+        while (true) {
+            final long sleep = next - System.currentTimeMillis();
+            if (sleep > 0) try {Thread.sleep(sleep);} catch (final InterruptedException e) {}
+            next += this.tickMillis;
+            advance();
+        }
+    }
+
+    /**
+     * advance the wheel by one tick and run the expired deadlines of the new tick
+     */
+    void advance() {
+        final long t;
+        synchronized (this.buckets) {
+            t = ++this.tick;
+        }
+        final Set<Deadline> bucket = this.buckets.get((int) (t % this.buckets.size()));
+        final Iterator<Deadline> i = bucket.iterator();
+        while (i.hasNext()) {
+            final Deadline deadline = i.next();
+            if (deadline.expiryTick > t) continue; // the deadline expires in a later turn of the wheel
+            if (bucket.remove(deadline)) {
+                this.pending.decrementAndGet();
+                deadline.expired = true;
+                try {
+                    deadline.task.run();
+                } catch (final Throwable e) {
+                    Logger.warn(this.getClass(), "DeadlineWheel task failed", e);
+                }
+            }
+        }
+    }
+
+    public class Deadline {
+        private final Runnable task;
+        private Set<Deadline> bucket;
+        private volatile long expiryTick; // the tick at which the deadline expires
+        private volatile boolean expired = false;
+
+        private Deadline(final Runnable task, final Set<Deadline> bucket, final long expiryTick) {
+            this.task = task;
+            this.bucket = bucket;
+            this.expiryTick = expiryTick;
+        }
+
+        /**
+         * cancel the deadline; the task will not run. Cancelling an expired deadline does nothing.
+         */
+        public void cancel() {
+            synchronized (DeadlineWheel.this.buckets) {
+                if (this.bucket.remove(this)) DeadlineWheel.this.pending.decrementAndGet();
+            }
+        }
+
+        /**
+         * @return true if the deadline has expired and its task was run; a task which fails a request sees true
+         */
+        public boolean isExpired() {
+            return this.expired;
+        }
+
+        /**
+         * move the deadline to a later time, i.e. to exclude a wait which is not part of the request time
+         * @param delayMillis the time in milliseconds the deadline is moved
+         * @return false if the deadline has already expired or was cancelled
+         */
+        public boolean postpone(final long delayMillis) {
+            if (delayMillis <= 0) return true;
+            synchronized (DeadlineWheel.this.buckets) {
+                if (!this.bucket.remove(this)) return false;
+                this.expiryTick += ticks(delayMillis);
+                this.bucket = DeadlineWheel.this.buckets.get((int) (this.expiryTick % DeadlineWheel.this.buckets.size()));
+                this.bucket.add(this);
+                return true;
+            }
+        }
+    }
+}
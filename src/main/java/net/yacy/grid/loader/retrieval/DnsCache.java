@@ -0,0 +1,244 @@
+/**
+ *  DnsCache
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.DnsResolver;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.SocketAddressResolver;
+import org.json.JSONObject;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A DNS cache for all http engines of the loader.
+ * Resolved addresses are kept for a positive time-to-live, failed lookups for a negative time-to-live.
+ * Concurrent lookups of the same host share one resolution, and the hosts of an action can be prefetched
+ * in the background while the action waits for its turn.
+ */
+public class DnsCache implements DnsResolver, SocketAddressResolver {
+
+    public static final DnsCache instance = new DnsCache();
+
+    private static final int MAX_SIZE = 100000; // number of entries after which expired entries are removed
+
+    private volatile long ttl, negativeTtl;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, Entry> cache;
+    private final AtomicLong lookups, hits, negativeHits, misses, prefetches, resolutions, resolutionTime, maxResolutionTime;
+
+    private DnsCache() {
+        this.ttl = 300000;
+        this.negativeTtl = 30000;
+        final AtomicInteger count = new AtomicInteger(0);
+        final ThreadFactory threadFactory = r -> {
+            final Thread t = new Thread(r, "DnsCache-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(8, 8, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.cache = new ConcurrentHashMap<>();
+        this.lookups = new AtomicLong(0);
+        this.hits = new AtomicLong(0);
+        this.negativeHits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.prefetches = new AtomicLong(0);
+        this.resolutions = new AtomicLong(0);
+        this.resolutionTime = new AtomicLong(0);
+        this.maxResolutionTime = new AtomicLong(0);
+    }
+
+    /**
+     * configure the DNS cache
+     * @param ttl the time in milliseconds a resolved address is kept
+     * @param negativeTtl the time in milliseconds a failed lookup is kept
+     * @param threads the number of threads for the lookups
+     */
+    public static synchronized void init(final long ttl, final long negativeTtl, final int threads) {
+        instance.ttl = ttl;
+        instance.negativeTtl = negativeTtl;
+        final int t = Math.max(1, threads);
+        if (t > instance.executor.getMaximumPoolSize()) {
+            instance.executor.setMaximumPoolSize(t);
+            instance.executor.setCorePoolSize(t);
+        } else {
+            instance.executor.setCorePoolSize(t);
+            instance.executor.setMaximumPoolSize(t);
+        }
+    }
+
+    /**
+     * start the resolution of hosts in the background; hosts which are already in the cache are not resolved again
+     * @param hosts the host names
+     */
+    public void prefetch(final Collection<String> hosts) {
+        if (this.cache.size() > MAX_SIZE) cleanup();
+        for (final String host: hosts) {
+            if (host == null || host.length() == 0) continue;
+            final String key = host.toLowerCase(Locale.ROOT);
+            final Entry entry = this.cache.get(key);
+            if (entry != null && !entry.isExpired()) continue;
+            this.prefetches.incrementAndGet();
+            lookup(key);
+        }
+    }
+
+    /**
+     * resolve a host name with the cache
+     * @param host the host name
+     * @return the addresses of the host
+     * @throws UnknownHostException if the host cannot be resolved; this is also cached. The caller waits at most
+     *   the connect timeout of the host for the resolution, a resolution which takes longer goes on in the background.
+     */
+    @Override
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        final Entry entry = entry(host);
+        final int timeout = HostTimeouts.connectTimeout(host);
+        try {
+            return entry.future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof UnknownHostException ? (UnknownHostException) e.getCause() : new UnknownHostException(host);
+        } catch (final TimeoutException e) {
+            throw new UnknownHostException(host + ": no resolution within " + timeout + " milliseconds");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(host + ": interrupted");
+        }
+    }
+
+    /**
+     * resolve a host name for the jetty http client
+     */
+    @Override
+    public void resolve(final String host, final int port, final Promise<List<InetSocketAddress>> promise) {
+        entry(host).future.whenComplete((addresses, e) -> {
+            if (e != null) {
+                promise.failed(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            final List<InetSocketAddress> result = new ArrayList<>(addresses.length);
+            for (final InetAddress address: addresses) result.add(new InetSocketAddress(address, port));
+            promise.succeeded(result);
+        });
+    }
+
+    /**
+     * get the cache entry of a host and count the lookup; a lookup which is still running,
+     * i.e. from a prefetch, is counted as miss
+     */
+    private Entry entry(final String host) {
+        final String key = host.toLowerCase(Locale.ROOT);
+        this.lookups.incrementAndGet();
+        final Entry entry = this.cache.get(key);
+        if (entry != null && !entry.isExpired() && entry.future.isDone()) {
+            if (entry.future.isCompletedExceptionally()) this.negativeHits.incrementAndGet(); else this.hits.incrementAndGet();
+            return entry;
+        }
+        this.misses.incrementAndGet();
+        return lookup(key);
+    }
+
+    /**
+     * start a lookup and put it into the cache, unless a valid lookup for the host is already there
+     */
+    private Entry lookup(final String host) {
+        return this.cache.compute(host, (k, entry) -> {
+            if (entry != null && !entry.isExpired()) return entry;
+            final Entry e = new Entry();
+            this.executor.execute(() -> {
+                final long t = System.currentTimeMillis();
+                try {
+                    final InetAddress[] addresses = InetAddress.getAllByName(host);
+                    e.complete(t, this.ttl);
+                    e.future.complete(addresses);
+                } catch (final UnknownHostException | RuntimeException ex) {
+                    Logger.info(this.getClass(), "DnsCache cannot resolve " + host);
+                    e.complete(t, this.negativeTtl);
+                    e.future.completeExceptionally(ex);
+                }
+            });
+            return e;
+        });
+    }
+
+    /**
+     * remove expired entries
+     */
+    public void cleanup() {
+        this.cache.entrySet().removeIf(e -> e.getValue().isExpired());
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+
+    public JSONObject toJSON() {
+        cleanup();
+        final long lookups = this.lookups.get(), resolutions = this.resolutions.get();
+        final JSONObject json = new JSONObject(true);
+        json.put("size", this.cache.size());
+        json.put("lookups", lookups);
+        json.put("hits", this.hits.get());
+        json.put("negativeHits", this.negativeHits.get());
+        json.put("misses", this.misses.get());
+        json.put("hitRate", lookups == 0 ? 0.0d : ((double) (this.hits.get() + this.negativeHits.get())) / ((double) lookups));
+        json.put("prefetches", this.prefetches.get());
+        json.put("resolutions", resolutions);
+        json.put("averageResolutionTime", resolutions == 0 ? 0 : this.resolutionTime.get() / resolutions);
+        json.put("maxResolutionTime", this.maxResolutionTime.get());
+        return json;
+    }
+
+    private class Entry {
+        private final CompletableFuture<InetAddress[]> future = new CompletableFuture<>();
+        private volatile long expires = Long.MAX_VALUE; // a running lookup does not expire
+
+        private void complete(final long start, final long timeToLive) {
+            final long now = System.currentTimeMillis();
+            this.expires = now + timeToLive;
+            final long time = now - start;
+            DnsCache.this.resolutions.incrementAndGet();
+            DnsCache.this.resolutionTime.addAndGet(time);
+            DnsCache.this.maxResolutionTime.accumulateAndGet(time, Math::max);
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > this.expires;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ *  HeadlessRenderer
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import net.yacy.grid.tools.Memory;
+
+/**
+ * A dedicated pool of threads for headless rendering with admission control.
+ * A render is started only if less than the maximum number of renders are running and the free heap, reduced by
+ * the memory reserved for the running renders, can hold the estimated memory of another render. The estimation is
+ * the configured memory per render or the average observed memory of recent renders, whichever is larger.
+ * A render which is not admitted within the queue timeout is not done; the caller uses the content of the plain GET request.
+ * A render which takes longer than the render timeout is cancelled and its web client is closed, which stops its javascript.
+ */
+public class HeadlessRenderer {
+
+    private static int threads = Runtime.getRuntime().availableProcessors();
+    private static long queueTimeout = 10000;      // milliseconds a render may wait for admission
+    private static long memoryEstimate = 64L * 1024L * 1024L; // the configured memory of one render in bytes
+    private static long renderTimeout = 30000;     // milliseconds a render may take
+
+    private static ExecutorService executor = null;
+    private static final Object admission = new Object();
+    private static int running = 0;
+    private static long reserved = 0;
+    private static volatile double observedMemory = 0.0d; // the average memory use of recent renders
+
+    private static final AtomicInteger queued = new AtomicInteger(0);
+    private static final AtomicLong admitted = new AtomicLong(0), rendered = new AtomicLong(0), failed = new AtomicLong(0), queueTimeouts = new AtomicLong(0),
+            renderTimeouts = new AtomicLong(0),
+            renderTime = new AtomicLong(0), maxRenderTime = new AtomicLong(0), queueTime = new AtomicLong(0);
+
+    /**
+     * configure the renderer
+     * @param maxThreads the maximum number of renders at the same time
+     * @param maxQueueTime the time in milliseconds a render may wait for admission
+     * @param renderMemory the estimated memory of one render in bytes
+     * @param maxRenderTime the time in milliseconds a render may take
+     */
+    public static synchronized void init(final int maxThreads, final long maxQueueTime, final long renderMemory, final long maxRenderTime) {
+        threads = Math.max(1, maxThreads);
+        queueTimeout = maxQueueTime;
+        memoryEstimate = renderMemory;
+        renderTimeout = maxRenderTime;
+        if (executor != null) executor.shutdown();
+        executor = newExecutor(threads);
+    }
+
+    private static ExecutorService newExecutor(final int size) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(size, r -> {
+            final Thread t = new Thread(r, "HeadlessRenderer " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) executor = newExecutor(threads);
+        return executor;
+    }
+
+    /**
+     * render a page with the headless browser on a render thread
+     * @param url the url of the page
+     * @param windowName the name of the browser window
+     * @param header the response header of the GET request for the url
+     * @param content the decoded content of the GET request, which is served to the browser as main document
+     * @return the loader with the rendered page
+     * @throws QueueTimeoutException if the render was not admitted within the queue timeout
+     * @throws IOException if the render failed or exceeded the render timeout
+     */
+    public static HtmlUnitLoader render(final String url, final String windowName, final Map<String, List<String>> header, final ContentBuffer content) throws IOException {
+        final long estimate = estimate();
+        final long start = System.currentTimeMillis();
+        queued.incrementAndGet();
+        try {
+            synchronized (admission) {
+                while (running >= threads || Memory.available() - reserved < estimate) {
+                    final long remaining = start + queueTimeout - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        queueTimeouts.incrementAndGet();
+                        throw new QueueTimeoutException("no render admitted for " + url + " within " + queueTimeout + " milliseconds");
+                    }
+                    // the free memory changes without notification, therefore it is checked again after a short time
+                    try {
+                        admission.wait(Math.min(remaining, 100));
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted while waiting for a render");
+                    }
+                }
+                running++;
+                reserved += estimate;
+            }
+        } finally {
+            queued.decrementAndGet();
+        }
+        admitted.incrementAndGet();
+        queueTime.addAndGet(System.currentTimeMillis() - start);
+
+        // the admission and the content are given back when the render has ended, which may be after the caller gave up waiting
+        final ContentBuffer document = content == null ? null : content.retain();
+        final AtomicBoolean started = new AtomicBoolean(false);
+        final long renderStart = System.currentTimeMillis();
+        WebClientPool.PooledClient client = null;
+        Future<HtmlUnitLoader> future = null;
+        try {
+            final WebClientPool.PooledClient pooledClient = WebClientPool.acquire();
+            client = pooledClient;
+            // closing the client does not stop a running script, therefore the scripts are stopped by the engine as well
+            pooledClient.client.setJavaScriptTimeout(renderTimeout);
+            future = getExecutor().submit(() -> {
+                if (!started.compareAndSet(false, true)) return null; // the render was cancelled before it started
+                try {
+                    return new HtmlUnitLoader(pooledClient, url, windowName, header, document);
+                } finally {
+                    leave(estimate, document);
+                }
+            });
+            final HtmlUnitLoader loader = future.get(renderTimeout, TimeUnit.MILLISECONDS);
+            final long time = System.currentTimeMillis() - renderStart;
+            rendered.incrementAndGet();
+            renderTime.addAndGet(time);
+            maxRenderTime.accumulateAndGet(time, Math::max);
+            observedMemory = observedMemory == 0.0d ? loader.getUsedMemory() : 0.9d * observedMemory + 0.1d * loader.getUsedMemory();
+            return loader;
+        } catch (final TimeoutException e) {
+            renderTimeouts.incrementAndGet();
+            cancel(future, client);
+            throw new IOException("render of " + url + " exceeded " + renderTimeout + " milliseconds");
+        } catch (final InterruptedException e) {
+            failed.incrementAndGet();
+            cancel(future, client);
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while rendering " + url);
+        } catch (final ExecutionException e) {
+            failed.incrementAndGet();
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause == null ? e.getMessage() : cause.getMessage());
+        } catch (final RuntimeException e) {
+            // the web client could not be created or the render could not be submitted
+            failed.incrementAndGet();
+            if (client != null) WebClientPool.discard(client);
+            throw new IOException("cannot render " + url + ": " + e.getMessage());
+        } finally {
+            // if the render did not start, it never will and its admission is given back here
+            if (started.compareAndSet(false, true)) leave(estimate, document);
+        }
+    }
+
+    /**
+     * stop a render: the render thread is interrupted and the web client is closed; a running render fails with the
+     * closed client and releases its admission
+     */
+    private static void cancel(final Future<HtmlUnitLoader> future, final WebClientPool.PooledClient client) {
+        if (future != null) future.cancel(true);
+        if (client != null) WebClientPool.discard(client);
+    }
+
+    private static void leave(final long estimate, final ContentBuffer document) {
+        if (document != null) document.close();
+        synchronized (admission) {
+            running--;
+            reserved -= estimate;
+            admission.notifyAll();
+        }
+    }
+
+    private static long estimate() {
+        return Math.max(memoryEstimate, (long) observedMemory);
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("threads", threads);
+        json.put("queueTimeout", queueTimeout);
+        json.put("renderTimeout", renderTimeout);
+        json.put("memoryEstimate", estimate());
+        synchronized (admission) {
+            json.put("running", running);
+            json.put("reserved", reserved);
+        }
+        json.put("queued", queued.get());
+        final long count = rendered.get(), admittedCount = admitted.get();
+        json.put("admitted", admittedCount);
+        json.put("rendered", count);
+        json.put("failed", failed.get());
+        json.put("queueTimeouts", queueTimeouts.get());
+        json.put("renderTimeouts", renderTimeouts.get());
+        json.put("averageQueueTime", admittedCount == 0 ? 0 : queueTime.get() / admittedCount);
+        json.put("averageRenderTime", count == 0 ? 0 : renderTime.get() / count);
+        json.put("maxRenderTime", maxRenderTime.get());
+        json.put("prefetchedDocuments", PrefetchedWebConnection.served());
+        return json;
+    }
+
+    /**
+     * a render was not admitted within the queue timeout
+     */
+    public static class QueueTimeoutException extends IOException {
+        private static final long serialVersionUID = 3260934829450982347L;
+        public QueueTimeoutException(final String message) {
+            super(message);
+        }
+    }
+}
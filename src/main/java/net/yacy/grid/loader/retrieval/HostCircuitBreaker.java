@@ -0,0 +1,179 @@
+/**
+ *  HostCircuitBreaker
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A circuit breaker for each host.
+ * After a number of consecutive connection failures (unknown host, connection refused, timeout) the circuit of a host
+ * is opened and all requests to that host fail immediately. After a backoff time one probe request is let through
+ * (half-open); if it succeeds the circuit is closed, otherwise it is opened again with a doubled backoff time.
+ */
+public class HostCircuitBreaker {
+
+    public enum State {closed, open, halfOpen}
+
+    private static int threshold = 5;
+    private static long backoff = 30000;
+    private static long maxBackoff = 600000;
+
+    private static final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private static final AtomicLong opened = new AtomicLong(0), rejected = new AtomicLong(0);
+
+    /**
+     * configure the circuit breaker
+     * @param failureThreshold the number of consecutive failures which open the circuit, 0 switches the circuit breaker off
+     * @param initialBackoff the time in milliseconds until the first probe of an opened circuit
+     * @param maximumBackoff the maximum time in milliseconds between two probes
+     */
+    public static void init(final int failureThreshold, final long initialBackoff, final long maximumBackoff) {
+        threshold = failureThreshold;
+        backoff = initialBackoff;
+        maxBackoff = Math.max(initialBackoff, maximumBackoff);
+        circuits.clear();
+    }
+
+    /**
+     * check if a request to the host is allowed
+     * @param host the host
+     * @throws CircuitOpenException if the circuit of the host is open
+     */
+    public static void check(final String host) throws CircuitOpenException {
+        if (threshold <= 0 || host == null) return;
+        final Circuit circuit = circuits.get(host);
+        if (circuit == null) return;
+        synchronized (circuit) {
+            if (circuit.state == State.closed) return;
+            final long now = System.currentTimeMillis();
+            if (circuit.state == State.open && now >= circuit.retry) {
+                // let one probe request through
+                circuit.state = State.halfOpen;
+                circuit.probeStart = now;
+                return;
+            }
+            if (circuit.state == State.halfOpen && now - circuit.probeStart > circuit.backoff) {
+                // the probe did not report back; let another probe through
+                circuit.probeStart = now;
+                return;
+            }
+        }
+        rejected.incrementAndGet();
+        throw new CircuitOpenException("host " + host + " unavailable, circuit open after " + circuit.failures + " failures");
+    }
+
+    /**
+     * report a request which reached the host; this closes the circuit
+     * @param host the host
+     */
+    public static void success(final String host) {
+        if (host == null) return;
+        final Circuit circuit = circuits.remove(host);
+        if (circuit != null && circuit.state != State.closed) Logger.info(HostCircuitBreaker.class, "HostCircuitBreaker closed circuit for " + host);
+    }
+
+    /**
+     * report a request which failed to connect to the host
+     * @param host the host
+     */
+    public static void failure(final String host) {
+        if (threshold <= 0 || host == null) return;
+        final Circuit circuit = circuits.computeIfAbsent(host, h -> new Circuit());
+        synchronized (circuit) {
+            circuit.failures++;
+            final long now = System.currentTimeMillis();
+            if (circuit.state == State.halfOpen) {
+                circuit.backoff = Math.min(maxBackoff, circuit.backoff * 2);
+                circuit.state = State.open;
+                circuit.retry = now + circuit.backoff;
+            } else if (circuit.state == State.closed && circuit.failures >= threshold) {
+                circuit.backoff = backoff;
+                circuit.state = State.open;
+                circuit.retry = now + circuit.backoff;
+                opened.incrementAndGet();
+                Logger.info(HostCircuitBreaker.class, "HostCircuitBreaker opened circuit for " + host + " after " + circuit.failures + " failures");
+            }
+        }
+        if (circuits.size() > 10000) circuits.entrySet().removeIf(entry -> entry.getValue().state == State.closed);
+    }
+
+    public static State getState(final String host) {
+        final Circuit circuit = circuits.get(host);
+        return circuit == null ? State.closed : circuit.state;
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("threshold", threshold);
+        json.put("opened", opened.get());
+        json.put("rejected", rejected.get());
+        final JSONArray hosts = new JSONArray();
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<String, Circuit> entry: circuits.entrySet()) {
+            final Circuit circuit = entry.getValue();
+            synchronized (circuit) {
+                if (circuit.state == State.closed) continue;
+                final JSONObject h = new JSONObject(true);
+                h.put("host", entry.getKey());
+                h.put("state", circuit.state.name());
+                h.put("failures", circuit.failures);
+                h.put("backoff", circuit.backoff);
+                h.put("retryIn", Math.max(0, circuit.retry - now));
+                hosts.put(h);
+            }
+        }
+        json.put("hosts", hosts);
+        return json;
+    }
+
+    private static class Circuit {
+        private State state = State.closed;
+        private int failures = 0;
+        private long backoff = 0, retry = 0, probeStart = 0;
+    }
+
+    /**
+     * a request to a host failed to connect; this counts as failure for the circuit breaker
+     */
+    public static class HostFailureException extends IOException {
+        private static final long serialVersionUID = 5206457412867374410L;
+        public HostFailureException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * a request was not done because the circuit of the host is open
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = -1372096155736201543L;
+        public CircuitOpenException(final String message) {
+            super(message);
+        }
+    }
+}
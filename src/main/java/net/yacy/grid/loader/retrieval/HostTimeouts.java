@@ -0,0 +1,134 @@
+/**
+ *  HostTimeouts
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/**
+ * Timeouts for each host, estimated from the observed connect times and times to the first response byte.
+ * The timeout is a multiple of the 95th percentile of the recent samples of a host, limited by a floor and a ceiling.
+ * Hosts with too few samples get the ceiling, so a host is never cut off before its latency is known.
+ * A request which ran into a timeout is recorded with the timeout as sample, which raises the estimation.
+ */
+public class HostTimeouts {
+
+    private static final int SAMPLES = 32;     // the number of recent samples for each host
+    private static final int MIN_SAMPLES = 5;  // the number of samples which are required for an estimation
+    private static final int MAX_HOSTS = 10000;
+    private static final long HOST_TTL = 3600000; // hosts which were not used for this time are removed
+
+    private static long floor = 2000;
+    private static long ceiling = 10000;
+    private static double multiplier = 4.0d;
+
+    private static final ConcurrentHashMap<String, Latency> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * configure the estimation
+     * @param floorTimeout the minimum timeout in milliseconds
+     * @param ceilingTimeout the maximum timeout in milliseconds; also used for hosts without enough samples
+     * @param percentileMultiplier the factor for the 95th percentile of the samples
+     */
+    public static void init(final long floorTimeout, final long ceilingTimeout, final double percentileMultiplier) {
+        floor = floorTimeout;
+        ceiling = Math.max(floorTimeout, ceilingTimeout);
+        multiplier = percentileMultiplier;
+    }
+
+    public static void recordConnect(final String host, final long millis) {
+        if (host != null) latency(host.toLowerCase(Locale.ROOT)).connect.add(millis);
+    }
+
+    public static void recordResponse(final String host, final long millis) {
+        if (host != null) latency(host.toLowerCase(Locale.ROOT)).response.add(millis);
+    }
+
+    /**
+     * @return the connect timeout for the host in milliseconds
+     */
+    public static int connectTimeout(final String host) {
+        final Latency latency = host == null ? null : hosts.get(host.toLowerCase(Locale.ROOT));
+        return latency == null ? (int) ceiling : latency.connect.timeout();
+    }
+
+    /**
+     * @return the timeout for the first response byte and between two bytes in milliseconds
+     */
+    public static int socketTimeout(final String host) {
+        final Latency latency = host == null ? null : hosts.get(host.toLowerCase(Locale.ROOT));
+        return latency == null ? (int) ceiling : latency.response.timeout();
+    }
+
+    private static Latency latency(final String host) {
+        if (hosts.size() > MAX_HOSTS) {
+            final long now = System.currentTimeMillis();
+            hosts.entrySet().removeIf(entry -> now - entry.getValue().lastUse > HOST_TTL);
+        }
+        final Latency latency = hosts.computeIfAbsent(host, h -> new Latency());
+        latency.lastUse = System.currentTimeMillis();
+        return latency;
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("floor", floor);
+        json.put("ceiling", ceiling);
+        json.put("multiplier", multiplier);
+        json.put("hosts", hosts.size());
+        int estimated = 0;
+        long sum = 0;
+        for (final Latency latency: hosts.values()) {
+            if (latency.response.count < MIN_SAMPLES) continue;
+            estimated++;
+            sum += latency.response.timeout();
+        }
+        json.put("estimatedHosts", estimated);
+        json.put("averageSocketTimeout", estimated == 0 ? ceiling : sum / estimated);
+        return json;
+    }
+
+    private static class Latency {
+        private final Samples connect = new Samples(), response = new Samples();
+        private volatile long lastUse = 0;
+    }
+
+    private static class Samples {
+        private final long[] values = new long[SAMPLES];
+        private int count = 0, pos = 0;
+
+        private synchronized void add(final long value) {
+            this.values[this.pos] = value;
+            this.pos = (this.pos + 1) % SAMPLES;
+            if (this.count < SAMPLES) this.count++;
+        }
+
+        private synchronized int timeout() {
+            if (this.count < MIN_SAMPLES) return (int) ceiling;
+            final long[] sorted = Arrays.copyOf(this.values, this.count);
+            Arrays.sort(sorted);
+            final long p95 = sorted[Math.min(this.count - 1, (int) Math.ceil(0.95d * this.count) - 1)];
+            return (int) Math.max(floor, Math.min(ceiling, (long) (multiplier * p95)));
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.gargoylesoftware.css.parser.CSSErrorHandler;
 import com.gargoylesoftware.css.parser.CSSException;
@@ -54,6 +55,15 @@ import net.yacy.grid.tools.Memory;
  */
 public class HtmlUnitLoader {
 
+    private static final AtomicInteger rendersInFlight = new AtomicInteger(0);
+
+    /**
+     * @return the number of headless renders which are running right now
+     */
+    public static int rendersInFlight() {
+        return rendersInFlight.get();
+    }
+
     public static WebClient getClient() {
         return getClient(BrowserVersion.CHROME.getUserAgent());
     }
@@ -76,7 +86,11 @@ public class HtmlUnitLoader {
         //proxyConfig.setProxyHost("127.0.0.1");
         //proxyConfig.setProxyPort(Service.getPort());
         //options.setProxyConfig(proxyConfig);
-        webClient.getCache().setMaxSize(10000); // this might be a bit large, is regulated with throttling and client cache clear in short memory status
+        if (SharedResourceCache.instance.isEnabled()) {
+            webClient.setCache(SharedResourceCache.instance); // scripts and style sheets are shared by all sessions
+        } else {
+            webClient.getCache().setMaxSize(10000); // this might be a bit large, is regulated with throttling and client cache clear in short memory status
+        }
         webClient.setIncorrectnessListener(new IncorrectnessListener() {
             @Override
             public void notify(String arg0, Object arg1) {}
@@ -107,6 +121,7 @@ public class HtmlUnitLoader {
             @Override
             public void warning(String message, URL url, String html, int line, int column, String key) {}
         });
+        new PrefetchedWebConnection(webClient); // the main document of a render can be served from an already loaded response
         return webClient;
     }
 
@@ -124,6 +139,7 @@ public class HtmlUnitLoader {
     }
 
     private String url, xml, responseHeaders, requestHeaders;
+    private long usedMemory = 0;
 
     public String getUrl() {
         return this.url;
@@ -141,6 +157,13 @@ public class HtmlUnitLoader {
         return this.requestHeaders;
     }
 
+    /**
+     * @return the heap memory which was used by the render, estimated from the free memory before and after the render
+     */
+    public long getUsedMemory() {
+        return this.usedMemory;
+    }
+
     private String parseRequestHeaders(HttpMethod httpMethod, String url, Map<String, String> headers) {
         String header = String.format("%s %s HTTP/1.1", httpMethod.toString(), url);
 
@@ -171,15 +194,46 @@ public class HtmlUnitLoader {
         return String.format("%s\n\n", header);
     }
 
-    public HtmlUnitLoader(String url, String windowName) throws IOException {// check short memory status
+    public HtmlUnitLoader(String url, String windowName) throws IOException {
+        this(url, windowName, null, null);
+    }
+
+    /**
+     * render a page
+     * @param url the url of the page
+     * @param windowName the name of the browser window
+     * @param header the response header of an already done GET request for the url or null
+     * @param content the decoded content of that request or null to load the page from the network; the buffer is not closed
+     * @throws IOException
+     */
+    public HtmlUnitLoader(String url, String windowName, Map<String, List<String>> header, ContentBuffer content) throws IOException {
+        this(WebClientPool.acquire(), url, windowName, header, content);
+    }
+
+    /**
+     * render a page with a client of the pool
+     * @param pooledClient the client from WebClientPool.acquire() which is released after the render
+     * @param url the url of the page
+     * @param windowName the name of the browser window
+     * @param header the response header of an already done GET request for the url or null
+     * @param content the decoded content of that request or null to load the page from the network; the buffer is not closed
+     * @throws IOException
+     */
+    public HtmlUnitLoader(final WebClientPool.PooledClient pooledClient, String url, String windowName, Map<String, List<String>> header, ContentBuffer content) throws IOException {// check short memory status
 
         this.url = url;
         HtmlPage page;
-        try (WebClient client = getClient()) {
+        rendersInFlight.incrementAndGet(); // the client is already acquired, the finally block below always balances this
+        final PrefetchedWebConnection connection = pooledClient.client.getWebConnection() instanceof PrefetchedWebConnection ? (PrefetchedWebConnection) pooledClient.client.getWebConnection() : null;
+        boolean reusable = false;
+        try {
+            final WebClient client = pooledClient.client;
             long mem0 = Memory.available();
             URL uurl = UrlUtils.toUrlUnsafe(url);
+            if (connection != null && content != null) connection.setDocument(uurl, header, content);
             String htmlAcceptHeader = client.getBrowserVersion().getHtmlAcceptHeader();
-            WebWindow webWindow = client.openWindow(uurl, windowName); // throws ClassCastException: com.gargoylesoftware.htmlunit.UnexpectedPage cannot be cast to com.gargoylesoftware.htmlunit.html.HtmlPage
+            // the window is opened empty, the page is loaded only once with getPage
+            WebWindow webWindow = client.openWindow(UrlUtils.URL_ABOUT_BLANK, windowName); // throws ClassCastException: com.gargoylesoftware.htmlunit.UnexpectedPage cannot be cast to com.gargoylesoftware.htmlunit.html.HtmlPage
             WebRequest webRequest = new WebRequest(uurl, htmlAcceptHeader, null);
             page = client.getPage(webWindow, webRequest); // com.gargoylesoftware.htmlunit.xml.XmlPage cannot be cast to com.gargoylesoftware.htmlunit.html.HtmlPage
             this.xml = page.asXml();
@@ -196,16 +250,12 @@ public class HtmlUnitLoader {
             );
 
             long mem1 = Memory.available();
+            this.usedMemory = Math.max(0, mem0 - mem1);
             Page htmlpage = webWindow.getEnclosedPage();
             htmlpage.cleanUp();
             if (webWindow instanceof TopLevelWindow) ((TopLevelWindow) webWindow).close();
-            for (WebWindow ww: client.getWebWindows()) {
-                if (ww instanceof TopLevelWindow) ((TopLevelWindow) ww).close();
-                ww.getJobManager().removeAllJobs();
-            }
             client.deregisterWebWindow(webWindow);
-            client.getCache().clear();
-            client.close();
+            reusable = true; // the other windows, jobs, cookies and the cache are cleared by the pool
             long mem2 = Memory.available();
             Logger.info(this.getClass(), "HtmlUnitLoader loaded " + url + " - " + this.xml.length() + " bytes; used " + (mem1 - mem0) + " bytes, after cleanup " + (mem2 - mem0) + " bytes");
         } catch (Throwable e) {
@@ -216,6 +266,10 @@ public class HtmlUnitLoader {
             // load the page with standard client anyway
             // to do this, we throw an IOException here and the caller must handle this
             throw new IOException(e.getMessage());
+        } finally {
+            if (connection != null) connection.clear();
+            WebClientPool.release(pooledClient, reusable);
+            rendersInFlight.decrementAndGet();
         }
     }
 
@@ -33,6 +33,16 @@ public interface HttpClient {
     public String getRequestHeader();
 
     public String getResponseHeader();
-    
-    public byte[] getContent();
+
+    /**
+     * get the url of the response
+     * @return the url of the last request if the request was redirected, otherwise the requested url
+     */
+    public String getURL();
+
+    /**
+     * get the content of the response
+     * @return the content buffer or null if no content was loaded; the buffer must be closed after use
+     */
+    public ContentBuffer getContent();
 }
@@ -0,0 +1,96 @@
+/**
+ *  HttpEngine
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The http client implementations which can be used by the loader.
+ * The engine is selected with the property grid.loader.httpEngine
+ */
+public enum HttpEngine {
+
+    apache, // blocking apache http client, one thread per connection
+    jetty,  // jetty http client behind a blocking facade, one caller thread per request
+    http2;  // jetty http client with http/2 and fallback to http/1.1, blocking facade as well
+
+    public static HttpEngine selected = apache;
+
+    public static HttpClient connect(final String url, final boolean head) throws IOException {
+        return connect(url, head, null);
+    }
+
+    /**
+     * load a url with the selected engine
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null
+     * @return the http client with the response
+     * @throws IOException
+     */
+    public static HttpClient connect(final String url, final boolean head, final Map<String, String> requestHeaders) throws IOException {
+        return connect(url, head, requestHeaders, null);
+    }
+
+    /**
+     * load a url with the selected engine
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null
+     * @param policy the load policy of the crawl or null
+     * @return the http client with the response
+     * @throws IOException
+     * @throws LoadPolicy.SkippedException if the response is rejected by the load policy
+     */
+    public static HttpClient connect(final String url, final boolean head, final Map<String, String> requestHeaders, final LoadPolicy policy) throws IOException {
+        // requests to hosts which failed repeatedly fail immediately
+        final String host = getHost(url);
+        HostCircuitBreaker.check(host);
+        try {
+            final HttpClient client;
+            switch (selected) {
+                case jetty: client = new JettyHttpClient(url, head, requestHeaders, policy); break;
+                case http2: client = JettyHttpClient.connectHttp2(url, head, requestHeaders, policy); break;
+                default:    client = new LoaderClientConnection(url, head, requestHeaders, policy);
+            }
+            HostCircuitBreaker.success(host);
+            return client;
+        } catch (final HostCircuitBreaker.HostFailureException e) {
+            HostCircuitBreaker.failure(host);
+            throw e;
+        } catch (final JettyHttpClient.StatusException | LoadPolicy.SkippedException e) {
+            // the host has answered
+            HostCircuitBreaker.success(host);
+            throw e;
+        }
+    }
+
+    private static String getHost(final String url) {
+        try {
+            return new URL(url).getHost().toLowerCase(Locale.ROOT);
+        } catch (final MalformedURLException e) {
+            return null;
+        }
+    }
+}
@@ -25,7 +25,8 @@ public class JavaHttpClient implements HttpClient {
     private String mime;
     private Map<String, List<String>> header;
     private String requestHeader, responseHeader;
-    private byte[] content;
+    private ContentBuffer content;
+    private String url;
     
     public static void initClient(String userAgent) {
         userAgentDefault = userAgent;
@@ -56,6 +57,7 @@ public class JavaHttpClient implements HttpClient {
         if (connection.getResponseCode() == 200)  // this must be called before 'getErrorStream()' works
             input = connection.getInputStream();
         else input = connection.getErrorStream();
+        this.url = connection.getURL().toExternalForm(); // the connection follows redirects
         BufferedReader reader = new BufferedReader(new InputStreamReader(input));
         String msg;
         while ((msg =reader.readLine()) != null)
@@ -89,7 +91,12 @@ public class JavaHttpClient implements HttpClient {
     }
 
     @Override
-    public byte[] getContent() {
+    public String getURL() {
+        return this.url;
+    }
+
+    @Override
+    public ContentBuffer getContent() {
         return this.content;
     }
     
@@ -0,0 +1,464 @@
+/**
+ *  JettyHttpClient
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLHandshakeException;
+
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import net.yacy.grid.http.ClientConnection;
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A blocking HttpClient facade on top of the jetty client.
+ * The socket i/o is done by the jetty selector and executor threads, but the constructor waits for the response
+ * and reads the content on the caller thread; each running request therefore holds one caller thread, just as
+ * with the apache client. The number of parallel loads is bounded by the loader concurrency, not by the jetty threads.
+ * With connectHttp2 the client negotiates http/2 and multiplexes all requests to the same origin over one connection.
+ */
+public class JettyHttpClient implements HttpClient {
+
+    private static final String CRLF = new String(ClientConnection.CRLF, StandardCharsets.US_ASCII);
+    private static final String ACCEPT = "text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2";
+    private static final long TIMEOUT = 10000;
+
+    private static final long HTTP1_ORIGIN_TTL = 3600000; // time in milliseconds an origin without http/2 support is remembered
+
+    private static org.eclipse.jetty.client.HttpClient httpClient = null;
+    private static org.eclipse.jetty.client.HttpClient http2Client = null;
+    private static final Map<String, Long> http1Origins = new ConcurrentHashMap<>(); // origins which failed to negotiate http/2, with the time of the failure
+
+    public static synchronized void initClient(final String userAgent, final int threads, final int maxConnectionsPerHost) {
+        if (httpClient != null) try {httpClient.stop();} catch (final Exception e) {}
+        httpClient = newClient(null, "JettyHttpClient", userAgent, threads, maxConnectionsPerHost);
+    }
+
+    /**
+     * initialize the http/2 client. The protocol is negotiated with ALPN and all requests to the same origin are
+     * multiplexed over one connection; origins which do not support http/2 are loaded with the http/1.1 client.
+     */
+    public static synchronized void initHttp2Client(final String userAgent, final int threads) {
+        if (http2Client != null) try {http2Client.stop();} catch (final Exception e) {}
+        final HTTP2Client h2 = new HTTP2Client();
+        h2.setConnectTimeout(TIMEOUT);
+        h2.setIdleTimeout(TIMEOUT);
+        final HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2(h2);
+        transport.setUseALPN(true);
+        http2Client = newClient(transport, "JettyHttp2Client", userAgent, threads, 1);
+        http2Client.addBean(new NegotiationListener(http2Client));
+    }
+
+    /**
+     * A server which ignores ALPN completes the TLS handshake without selecting a protocol; the http/2 connection is
+     * then closed before it is established and the waiting requests would hang until their timeout.
+     * This listener fails the waiting requests of such an origin at once.
+     */
+    private static class NegotiationListener implements SslHandshakeListener {
+        private final org.eclipse.jetty.client.HttpClient client;
+
+        private NegotiationListener(final org.eclipse.jetty.client.HttpClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void handshakeSucceeded(final Event event) {
+            final SSLEngine engine = event.getSSLEngine();
+            final String protocol = engine.getApplicationProtocol();
+            if ("h2".equals(protocol)) return;
+            for (final Destination destination: this.client.getDestinations()) {
+                if (destination.getPort() == engine.getPeerPort() && destination.getHost().equalsIgnoreCase(engine.getPeerHost())) {
+                    ((HttpDestination) destination).abort(new NoApplicationProtocolException("no http/2 selected by " + engine.getPeerHost() + ", protocol: " + protocol));
+                }
+            }
+        }
+    }
+
+    /**
+     * the TLS handshake with an origin did not select http/2
+     */
+    private static class NoApplicationProtocolException extends IOException {
+        private static final long serialVersionUID = -3051869417398273436L;
+        private NoApplicationProtocolException(final String message) {
+            super(message);
+        }
+    }
+
+    private static org.eclipse.jetty.client.HttpClient newClient(final HttpClientTransport transport, final String name, final String userAgent, final int threads, final int maxConnectionsPerHost) {
+        final QueuedThreadPool executor = new QueuedThreadPool(threads, Math.min(threads, 4));
+        executor.setName(name);
+        executor.setDaemon(true);
+        final org.eclipse.jetty.client.HttpClient client = transport == null ?
+                new org.eclipse.jetty.client.HttpClient(new SslContextFactory.Client(true)) :
+                new org.eclipse.jetty.client.HttpClient(transport, new SslContextFactory.Client(true));
+        client.setExecutor(executor);
+        client.setSocketAddressResolver(DnsCache.instance);
+        client.setMaxConnectionsPerDestination(maxConnectionsPerHost);
+        client.setFollowRedirects(true);
+        client.setConnectTimeout(TIMEOUT);
+        client.setIdleTimeout(TIMEOUT);
+        client.setUserAgentField(new HttpField(HttpHeader.USER_AGENT, userAgent));
+        client.getContentDecoderFactories().clear(); // we request compressed content ourselves and keep the received bytes
+        try {
+            client.start();
+        } catch (final Exception e) {
+            Logger.warn(JettyHttpClient.class, name + " cannot start client", e);
+        }
+        return client;
+    }
+
+    /**
+     * load a url with http/2 if the origin supports that, otherwise with http/1.1
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null
+     * @param policy the load policy of the crawl or null
+     * @return the http client with the response
+     * @throws IOException
+     */
+    public static HttpClient connectHttp2(final String url, final boolean head, final Map<String, String> requestHeaders, final LoadPolicy policy) throws IOException {
+        if (http2Client == null) initHttp2Client(LoaderClientConnection.userAgent, 16);
+        final String origin = getOrigin(url);
+        final Long failed = origin == null ? null : http1Origins.get(origin);
+        if (origin == null || !origin.startsWith("https://") || (failed != null && System.currentTimeMillis() - failed < HTTP1_ORIGIN_TTL)) {
+            return new JettyHttpClient(url, head, requestHeaders, policy); // http/2 is only negotiated within TLS
+        }
+        try {
+            return new JettyHttpClient(http2Client, url, head, requestHeaders, policy);
+        } catch (final ProtocolNegotiationException e) {
+            // the origin does not support http/2; remember that and retry with http/1.1.
+            // All other failures (unknown host, timeouts, refused connections, status codes) are not retried.
+            Logger.debug(JettyHttpClient.class, "JettyHttpClient http/2 failed for " + origin + ", using http/1.1: " + e.getMessage());
+            http1Origins.put(origin, System.currentTimeMillis());
+            if (http1Origins.size() > 10000) http1Origins.entrySet().removeIf(entry -> System.currentTimeMillis() - entry.getValue() > HTTP1_ORIGIN_TTL);
+            return new JettyHttpClient(url, head, requestHeaders, policy);
+        }
+    }
+
+    private static String getOrigin(final String url) {
+        try {
+            final URL u = new URL(url);
+            return u.getProtocol().toLowerCase(Locale.ROOT) + "://" + u.getHost().toLowerCase(Locale.ROOT) + ":" + (u.getPort() < 0 ? u.getDefaultPort() : u.getPort());
+        } catch (final MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * get the header name as it would be written in http/1.1; http/2 transfers all header names in lower case
+     */
+    private static String getHeaderName(final HttpField field, final boolean http2) {
+        if (!http2) return field.getName();
+        if (field.getHeader() != null) return field.getHeader().asString();
+        final StringBuilder sb = new StringBuilder(field.getName());
+        for (int i = 0; i < sb.length(); i++) {
+            if (i == 0 || sb.charAt(i - 1) == '-') sb.setCharAt(i, Character.toUpperCase(sb.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * decide if the failure of a http/2 request happened while the protocol was negotiated; this is the case if the
+     * TLS handshake failed, i.e. with a no_application_protocol alert, or if the handshake did not select h2.
+     * The caller must make sure that the request was not sent yet: a connection which is closed or reset after
+     * the negotiation is an ordinary failure.
+     */
+    private static boolean isNegotiationFailure(final Throwable cause) {
+        if (cause instanceof NoApplicationProtocolException || cause instanceof SSLHandshakeException) return true;
+        final String message = cause.getMessage();
+        if (message == null) return false;
+        final String m = message.toLowerCase(Locale.ROOT);
+        return m.contains("alpn") || m.contains("application protocol") || m.contains("application_protocol");
+    }
+
+    /**
+     * the http/2 protocol could not be negotiated with the origin
+     */
+    public static class ProtocolNegotiationException extends IOException {
+        private static final long serialVersionUID = 2410297458721843560L;
+        public ProtocolNegotiationException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * the server answered with a status code which is not accepted
+     */
+    public static class StatusException extends IOException {
+        private static final long serialVersionUID = -6113370325040364544L;
+        public StatusException(final String message) {
+            super(message);
+        }
+    }
+
+    private int status_code;
+    private String mime;
+    private final Map<String, List<String>> header;
+    private final String requestHeader;
+
+    private String responseHeader;
+    private ContentBuffer content;
+    private String url;
+
+    public JettyHttpClient(final String url, final boolean head) throws IOException {
+        this(httpClient, url, head, null, null);
+    }
+
+    /**
+     * load a url
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null, i.e. If-None-Match and If-Modified-Since for a conditional request.
+     *   A conditional request may be answered with status 304 which is not treated as failure.
+     * @throws IOException
+     */
+    public JettyHttpClient(final String url, final boolean head, final Map<String, String> requestHeaders) throws IOException {
+        this(httpClient, url, head, requestHeaders, null);
+    }
+
+    /**
+     * load a url
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null
+     * @param policy the load policy of the crawl which is checked when the response header arrives, or null
+     * @throws IOException
+     * @throws LoadPolicy.SkippedException if the response is rejected by the load policy; the content is not transferred
+     */
+    public JettyHttpClient(final String url, final boolean head, final Map<String, String> requestHeaders, final LoadPolicy policy) throws IOException {
+        this(httpClient, url, head, requestHeaders, policy);
+    }
+
+    private JettyHttpClient(org.eclipse.jetty.client.HttpClient client, final String url, final boolean head, final Map<String, String> requestHeaders, final LoadPolicy policy) throws IOException {
+        this.status_code = -1;
+        this.content = null;
+        this.url = url;
+        this.mime = "";
+        this.header = new HashMap<String, List<String>>();
+        if (client == null) {
+            initClient(LoaderClientConnection.userAgent, 16, 64);
+            client = httpClient;
+        }
+
+        final Request request = client.newRequest(url)
+                .method(head ? HttpMethod.HEAD : HttpMethod.GET)
+                .agent(LoaderClientConnection.userAgent)
+                .header(HttpHeader.ACCEPT, ACCEPT)
+                .header(HttpHeader.ACCEPT_ENCODING, ContentEncoding.ACCEPT_ENCODING);
+        if (requestHeaders != null) requestHeaders.forEach((k, v) -> request.header(k, v));
+        final long deadline = LoaderClientConnection.getDeadline(request.getHost());
+        // the idle timeout is estimated from the latency of the host; the connect timeout is set for the whole client
+        final int socketTimeout = HostTimeouts.socketTimeout(request.getHost());
+        request.idleTimeout(socketTimeout, TimeUnit.MILLISECONDS);
+
+        // compute the request header (we do this to have a documentation later of what we did)
+        final StringBuffer sb = new StringBuffer();
+        sb.append(request.getMethod()).append(' ').append(url).append(' ').append(HttpVersion.HTTP_1_1).append(CRLF);
+        sb.append("User-Agent: ").append(LoaderClientConnection.userAgent).append(CRLF);
+        sb.append("Accept: ").append(ACCEPT).append(CRLF);
+        sb.append("Accept-Encoding: ").append(ContentEncoding.ACCEPT_ENCODING).append(CRLF);
+        if (requestHeaders != null) requestHeaders.forEach((k, v) -> sb.append(k).append(": ").append(v).append(CRLF));
+        sb.append(CRLF);
+        this.requestHeader = sb.toString();
+
+        // do the request; the caller thread blocks until the jetty threads hand over the response and the content.
+        // The deadline aborts the request if connecting and transferring the content takes too long, it is postponed
+        // while the transfer waits for its bandwidth share.
+        final InputStreamResponseListener listener = new InputStreamResponseListener();
+        final AtomicBoolean sent = new AtomicBoolean(false); // true when the request was started on an established connection
+        request.onRequestBegin(r -> sent.set(true));
+        // the latency sample of the host is the time from the sent request to the first response byte,
+        // without the wait for a connection in the local pool and without the connect time
+        final AtomicLong requestSent = new AtomicLong(0);
+        request.onRequestSuccess(r -> requestSent.set(System.currentTimeMillis()));
+        request.onResponseBegin(r -> {
+            final long t = requestSent.get();
+            if (t > 0) HostTimeouts.recordResponse(request.getHost(), System.currentTimeMillis() - t);
+        });
+        final DeadlineWheel.Deadline requestDeadline = LoaderClientConnection.scheduleDeadline(() -> request.abort(new IOException("deadline exceeded")), request.getHost());
+        final Response response;
+        try {
+            request.send(listener);
+            try {
+                response = listener.get(deadline + 1000, TimeUnit.MILLISECONDS);
+            } catch (final ExecutionException e) {
+                // the deadline is a budget of this loader and not a failure of the host
+                if (requestDeadline.isExpired()) throw LoaderClientConnection.deadlineExceeded(url);
+                final Throwable cause = e.getCause() == null ? e : e.getCause();
+                if (cause instanceof UnknownHostException) throw new HostCircuitBreaker.HostFailureException("client connection failed: unknown host " + request.getHost());
+                if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                    HostTimeouts.recordResponse(request.getHost(), socketTimeout);
+                    throw new HostCircuitBreaker.HostFailureException("client connection timeout for request: " + url);
+                }
+                if (client == http2Client && !sent.get() && isNegotiationFailure(cause)) throw new ProtocolNegotiationException("http/2 negotiation failed for " + request.getHost() + ": " + cause.getMessage());
+                if (cause instanceof SSLHandshakeException) throw new IOException("client connection handshake error for domain " + request.getHost() + ": " + cause.getMessage());
+                if (cause instanceof ConnectException) throw new HostCircuitBreaker.HostFailureException("client connection refused for request " + url + ": " + cause.getMessage());
+                throw new IOException("error " + url + ": " + cause.getMessage());
+            } catch (final TimeoutException e) {
+                request.abort(e);
+                if (requestDeadline.isExpired()) throw LoaderClientConnection.deadlineExceeded(url);
+                throw new HostCircuitBreaker.HostFailureException("client connection timeout for request: " + url);
+            } catch (final InterruptedException e) {
+                request.abort(e);
+                throw new IOException("error " + url + ": interrupted");
+            }
+
+            this.status_code = response.getStatus();
+            this.url = response.getRequest().getURI().toString(); // the request follows redirects, this is the last request
+            if (head || this.status_code != 200) {
+                listener.getInputStream().close();
+                if (!head && this.status_code != 304) throw new StatusException("client connection to " + url + " fail (status code " + this.status_code + "): " + response.getReason());
+            } else {
+                if (policy != null) {
+                    try {
+                        policy.checkResponse(response.getHeaders().get(HttpHeader.CONTENT_TYPE), response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString()));
+                    } catch (final LoadPolicy.SkippedException e) {
+                        // close the connection without transferring the content
+                        request.abort(e);
+                        throw e;
+                    }
+                }
+                final long limit = policy == null ? ContentBuffer.maxSize : policy.limit(ContentBuffer.maxSize);
+                final ContentBuffer buffer = new ContentBuffer(ContentBuffer.memoryThreshold, limit);
+                try (InputStream inputStream = BandwidthShaper.shape(listener.getInputStream(), requestDeadline)) {
+                    if (!buffer.readFrom(inputStream)) {
+                        // stop the transfer, the content is truncated at the maximum size
+                        request.abort(new IOException("content truncated"));
+                        if (policy != null && policy.isPolicyLimit(limit)) {
+                            buffer.close();
+                            throw new LoadPolicy.SkippedException("content exceeds " + limit + " bytes");
+                        }
+                        Logger.info(this.getClass(), "ContentLoader truncated " + url + " at " + buffer.length() + " bytes");
+                    }
+                } catch (final LoadPolicy.SkippedException e) {
+                    throw e;
+                } catch (final IOException e) {
+                    // closing the stream of an aborted request fails, that is expected for truncated content
+                    if (!buffer.isTruncated()) {
+                        buffer.close();
+                        if (requestDeadline.isExpired()) throw LoaderClientConnection.deadlineExceeded(url);
+                        throw new IOException("error " + url + ": " + e.getMessage());
+                    }
+                }
+                this.content = buffer;
+                Logger.info(this.getClass(), "ContentLoader loaded " + url);
+            }
+        } finally {
+            requestDeadline.cancel();
+        }
+
+        // read response header and set mime; the header is always documented in http/1.1 format
+        final boolean http2 = response.getVersion() == HttpVersion.HTTP_2;
+        if (this.status_code == 200 || this.status_code == 304 || this.status_code == 403) {
+            for (final HttpField h: response.getHeaders()) {
+                final String name = getHeaderName(h, http2);
+                List<String> vals = this.header.get(name);
+                if (vals == null) { vals = new ArrayList<String>(); this.header.put(name, vals); }
+                vals.add(h.getValue());
+                if (name.equalsIgnoreCase("Content-Type")) this.mime = h.getValue();
+            }
+        }
+
+        // remove the charset from the mime type
+        final int p = this.mime.indexOf(';');
+        if (p >= 0) this.mime = this.mime.substring(0, p);
+
+        // compute response header string
+        sb.setLength(0);
+        sb.append(http2 ? HttpVersion.HTTP_1_1 : response.getVersion()).append(' ').append(this.status_code).append(CRLF);
+        for (final Map.Entry<String, List<String>> headers: this.header.entrySet()) {
+            for (final String v: headers.getValue()) {
+                sb.append(headers.getKey()).append(": ").append(v).append(CRLF);
+            }
+        }
+        sb.append(CRLF);
+        this.responseHeader = sb.toString();
+    }
+
+    @Override
+    public int getStatusCode() {
+        return this.status_code;
+    }
+
+    @Override
+    public String getMime() {
+        return this.mime;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeader() {
+        return this.header;
+    }
+
+    @Override
+    public String getRequestHeader() {
+        return this.requestHeader;
+    }
+
+    @Override
+    public String getResponseHeader() {
+        return this.responseHeader;
+    }
+
+    @Override
+    public String getURL() {
+        return this.url;
+    }
+
+    @Override
+    public ContentBuffer getContent() {
+        return this.content;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ *  LoadPolicy
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.json.JSONObject;
+
+import net.yacy.grid.tools.Logger;
+import net.yacy.grid.tools.MultiProtocolURL;
+
+/**
+ * A crawl-specific policy which documents are not loaded.
+ * The extension of a url is checked before the request, the mime type and the content length are checked
+ * when the response header has arrived; a rejected response is aborted before the content is transferred.
+ * The policy is defined in the crawl start data with the attributes
+ * - loaderMimeMustnotmatch : a regular expression for mime types which are not loaded, i.e. "video/.*|application/x-iso9660-image"
+ * - loaderExtensionMustnotmatch : a regular expression for file extensions which are not loaded, i.e. "iso|mp4|zip"
+ * - loaderMaxSize : the maximum content length in bytes, larger documents are not loaded
+ */
+public class LoadPolicy {
+
+    private final Pattern mimeMustnotmatch, extensionMustnotmatch;
+    private final long maxSize;
+
+    public LoadPolicy(final Pattern mimeMustnotmatch, final Pattern extensionMustnotmatch, final long maxSize) {
+        this.mimeMustnotmatch = mimeMustnotmatch;
+        this.extensionMustnotmatch = extensionMustnotmatch;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * read the policy from the crawl start data
+     * @param crawl the crawl start data
+     * @return the policy or null if the crawl does not restrict loading
+     */
+    public static LoadPolicy fromCrawl(final JSONObject crawl) {
+        final Pattern mime = pattern(crawl.optString("loaderMimeMustnotmatch", ""));
+        final Pattern extension = pattern(crawl.optString("loaderExtensionMustnotmatch", ""));
+        final long maxSize = crawl.optLong("loaderMaxSize", -1);
+        if (mime == null && extension == null && maxSize < 0) return null;
+        return new LoadPolicy(mime, extension, maxSize);
+    }
+
+    private static Pattern pattern(final String regex) {
+        if (regex.length() == 0) return null;
+        try {
+            return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        } catch (final PatternSyntaxException e) {
+            Logger.warn(LoadPolicy.class, "LoadPolicy bad pattern " + regex, e);
+            return null;
+        }
+    }
+
+    /**
+     * check the url before it is requested
+     * @param url the url
+     * @throws SkippedException if the file extension must not be loaded
+     */
+    public void checkURL(final String url) throws SkippedException {
+        if (this.extensionMustnotmatch == null) return;
+        try {
+            final String ext = MultiProtocolURL.getFileExtension(new MultiProtocolURL(url).getFileName()).toLowerCase(Locale.ROOT);
+            if (ext.length() > 0 && this.extensionMustnotmatch.matcher(ext).matches()) throw new SkippedException("extension " + ext + " excluded");
+        } catch (final MalformedURLException e) {
+            // the request will fail anyway
+        }
+    }
+
+    /**
+     * check the response header before the content is transferred
+     * @param contentType the Content-Type header, may be null
+     * @param contentLength the Content-Length or -1 if unknown
+     * @throws SkippedException if the response must not be loaded
+     */
+    public void checkResponse(final String contentType, final long contentLength) throws SkippedException {
+        final int p = contentType == null ? -1 : contentType.indexOf(';');
+        final String mime = contentType == null ? "" : (p < 0 ? contentType : contentType.substring(0, p)).trim();
+        if (this.mimeMustnotmatch != null && mime.length() > 0 && this.mimeMustnotmatch.matcher(mime).matches()) {
+            throw new SkippedException("mime type " + mime + " excluded");
+        }
+        if (this.maxSize >= 0 && contentLength > this.maxSize) {
+            throw new SkippedException("content length " + contentLength + " exceeds " + this.maxSize + " bytes");
+        }
+    }
+
+    /**
+     * compute the size limit of the content buffer; a response without Content-Length which exceeds the limit of the policy is skipped
+     * @param bufferMaxSize the maximum size of content buffers
+     * @return the smaller value of the buffer size and the maximum size of the policy
+     */
+    public long limit(final long bufferMaxSize) {
+        return this.maxSize >= 0 ? Math.min(bufferMaxSize, this.maxSize) : bufferMaxSize;
+    }
+
+    /**
+     * true if a content buffer which reached the given limit must be skipped and not truncated
+     */
+    public boolean isPolicyLimit(final long limit) {
+        return this.maxSize >= 0 && limit == this.maxSize;
+    }
+
+    /**
+     * a response which is not loaded because of the load policy
+     */
+    public static class SkippedException extends IOException {
+        private static final long serialVersionUID = -4720146338270218573L;
+        public SkippedException(final String reason) {
+            super(reason);
+        }
+    }
+}
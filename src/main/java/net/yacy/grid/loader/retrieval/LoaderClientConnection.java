@@ -19,35 +19,56 @@
 
 package net.yacy.grid.loader.retrieval;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLHandshakeException;
 
 import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.RequestLine;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
+import org.json.JSONObject;
 
 import net.yacy.grid.http.ClientConnection;
 import net.yacy.grid.http.ClientIdentification;
@@ -58,16 +79,142 @@ public class LoaderClientConnection implements HttpClient {
     private static final String CRLF = new String(ClientConnection.CRLF, StandardCharsets.US_ASCII);
 
     public  static String userAgent = ClientIdentification.browserAgent.userAgent;
-    private static CloseableHttpClient httpClient = ClientConnection.getClosableHttpClient(userAgent);
-    private static ScheduledExecutorService executorService = Executors.newScheduledThreadPool(30);
+    private static CloseableHttpClient httpClient;
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static RequestConfig requestConfig;
+    private static final String REQUEST_SENT = "loader.requestSent"; // context attribute with the time when the request was sent
+    private static final DeadlineWheel deadlines = new DeadlineWheel(100, 512);
+    private static long defaultDeadline = 10000;
+    private static Map<String, Long> hostDeadlines = new HashMap<>();
 
     static {
-        RequestConfig config = RequestConfig.custom()
+        initClient(200, 20, 30000, 60000);
+    }
+
+    /**
+     * initialize the http client with a connection pool
+     * @param maxTotal the maximum number of connections in the pool
+     * @param maxPerRoute the maximum number of connections for each route (host)
+     * @param keepAlive the maximum time in milliseconds an idle connection is kept alive if the server does not send a shorter keep-alive time
+     * @param idleTimeout the time in milliseconds after which an idle connection is evicted from the pool
+     */
+    public static synchronized void initClient(final int maxTotal, final int maxPerRoute, final long keepAlive, final long idleTimeout) {
+        final RequestConfig config = RequestConfig.custom()
           .setConnectTimeout(10000)
           .setConnectionRequestTimeout(10000)
           .setSocketTimeout(10000).build();
-        httpClient = 
-          HttpClientBuilder.create().setDefaultRequestConfig(config).build();
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+          .register("http", new TimedSocketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+          .register("https", new TimedSocketFactory(SSLConnectionSocketFactory.getSocketFactory()))
+          .build();
+        final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(registry, DnsCache.instance);
+        cm.setMaxTotal(maxTotal);
+        cm.setDefaultMaxPerRoute(maxPerRoute);
+        cm.setValidateAfterInactivity(2000);
+        final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+        };
+        final CloseableHttpClient oldClient = httpClient;
+        httpClient = HttpClientBuilder.create()
+          .setConnectionManager(cm)
+          .setDefaultRequestConfig(config)
+          .setKeepAliveStrategy(keepAliveStrategy)
+          .setRequestExecutor(new TimedRequestExecutor())
+          .disableContentCompression() // we request compressed content ourselves and keep the received bytes
+          .evictExpiredConnections()
+          .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+          .build();
+        connectionManager = cm;
+        requestConfig = config;
+        if (oldClient != null) try {oldClient.close();} catch (final IOException e) {}
+    }
+
+    /**
+     * set the deadlines for requests; a request is aborted if connecting and transferring the content takes longer
+     * @param deadline the default deadline in milliseconds
+     * @param hostClassDeadlines deadlines for host classes in the format {@code <host suffix>:<milliseconds>,...}, i.e. ".gov:30000,.nrw.de:30000"
+     */
+    public static void initDeadlines(final long deadline, final String hostClassDeadlines) {
+        final Map<String, Long> d = new HashMap<>();
+        if (hostClassDeadlines != null) for (final String hc: hostClassDeadlines.split(",")) {
+            final int p = hc.lastIndexOf(':');
+            if (p <= 0) continue;
+            try {
+                d.put(hc.substring(0, p).trim().toLowerCase(), Long.parseLong(hc.substring(p + 1).trim()));
+            } catch (final NumberFormatException e) {
+                Logger.warn(LoaderClientConnection.class, "LoaderClientConnection bad deadline for host class " + hc);
+            }
+        }
+        defaultDeadline = deadline;
+        hostDeadlines = d;
+    }
+
+    /**
+     * get the deadline for a request to the given host
+     * @param host the host name
+     * @return the time in milliseconds after which a request to the host is aborted
+     */
+    public static long getDeadline(final String host) {
+        if (host != null) {
+            final String h = host.toLowerCase();
+            for (final Map.Entry<String, Long> entry: hostDeadlines.entrySet()) {
+                if (h.endsWith(entry.getKey())) return entry.getValue();
+            }
+        }
+        return defaultDeadline;
+    }
+
+    /**
+     * schedule the deadline of a request
+     * @param abort the task which aborts the request
+     * @param host the host of the request
+     * @return the deadline which must be cancelled when the request is finished
+     */
+    public static DeadlineWheel.Deadline scheduleDeadline(final Runnable abort, final String host) {
+        return deadlines.schedule(abort, getDeadline(host));
+    }
+
+    /**
+     * the failure of a request which was aborted by its deadline; this is not a failure of the host and is not
+     * reported to the circuit breaker or the timeout estimation
+     * @param url the url of the request
+     * @return the exception which is thrown by all engines
+     */
+    static IOException deadlineExceeded(final String url) {
+        return new IOException("client connection deadline exceeded for request: " + url);
+    }
+
+    /**
+     * @return the number of requests with a running deadline
+     */
+    public static int pendingDeadlines() {
+        return deadlines.pending();
+    }
+
+    /**
+     * get the live statistics of the connection pool
+     * @return a json object with the total and the per-route numbers of leased, pending and available connections
+     */
+    public static JSONObject getPoolStats() {
+        final PoolingHttpClientConnectionManager cm = connectionManager;
+        final JSONObject json = new JSONObject(true);
+        json.put("total", poolStatsJSON(cm.getTotalStats()));
+        final JSONObject routes = new JSONObject(true);
+        for (final HttpRoute route: cm.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), poolStatsJSON(cm.getStats(route)));
+        }
+        json.put("routes", routes);
+        return json;
+    }
+
+    private static JSONObject poolStatsJSON(final PoolStats stats) {
+        final JSONObject json = new JSONObject(true);
+        json.put("leased", stats.getLeased());
+        json.put("pending", stats.getPending());
+        json.put("available", stats.getAvailable());
+        json.put("max", stats.getMax());
+        return json;
     }
 
     private int status_code;
@@ -76,17 +223,46 @@ public class LoaderClientConnection implements HttpClient {
     private final String requestHeader;
 
     private String responseHeader;
-    private byte[] content;
+    private ContentBuffer content;
+    private String url;
 
     public LoaderClientConnection(final String url, final boolean head) throws IOException {
+        this(url, head, null);
+    }
+
+    /**
+     * load a url
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null, i.e. If-None-Match and If-Modified-Since for a conditional request.
+     *   A conditional request may be answered with status 304 which is not treated as failure.
+     * @throws IOException
+     */
+    public LoaderClientConnection(final String url, final boolean head, final Map<String, String> requestHeaders) throws IOException {
+        this(url, head, requestHeaders, null);
+    }
+
+    /**
+     * load a url
+     * @param url the url
+     * @param head true for a HEAD request
+     * @param requestHeaders additional request headers or null
+     * @param policy the load policy of the crawl which is checked when the response header arrives, or null
+     * @throws IOException
+     * @throws LoadPolicy.SkippedException if the response is rejected by the load policy; the content is not transferred
+     */
+    public LoaderClientConnection(final String url, final boolean head, final Map<String, String> requestHeaders, final LoadPolicy policy) throws IOException {
         this.status_code = -1;
         this.content = null;
+        this.url = url;
         this.mime = "";
         this.header = new HashMap<String, List<String>>();
 
         final HttpRequestBase request = head ? new HttpHead(url) : new HttpGet(url);
         request.setHeader("User-Agent", userAgent);
         request.setHeader("Accept", "text/html, image/gif, image/jpeg, *; q=.2, */*; q=.2");
+        request.setHeader("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+        if (requestHeaders != null) requestHeaders.forEach((k, v) -> request.setHeader(k, v));
 
         // compute the request header (we do this to have a documentation later of what we did)
         final StringBuffer sb = new StringBuffer();
@@ -98,80 +274,122 @@ public class LoaderClientConnection implements HttpClient {
         sb.append(CRLF);
         this.requestHeader = sb.toString();
 
-        // do the request
+        // the timeouts are estimated from the latency of the host
+        final String host = request.getURI().getHost();
+        final int connectTimeout = HostTimeouts.connectTimeout(host);
+        final int socketTimeout = HostTimeouts.socketTimeout(host);
+        request.setConfig(RequestConfig.copy(requestConfig).setConnectTimeout(connectTimeout).setSocketTimeout(socketTimeout).build());
+
+        // do the request; the deadline aborts the request if connecting and transferring the content takes too long
+        final DeadlineWheel.Deadline deadline = scheduleDeadline(request::abort, host);
+        final HttpClientContext context = HttpClientContext.create();
         HttpResponse httpResponse = null;
         try {
-            executorService.schedule(request::abort, (long)10, TimeUnit.SECONDS);
-            httpResponse = httpClient.execute(request);
+            httpResponse = httpClient.execute(request, context);
+            // the request follows redirects; the url of the response is the location of the last redirect
+            try {
+                this.url = URIUtils.resolve(request.getURI(), context.getTargetHost(), context.getRedirectLocations()).toString();
+            } catch (final URISyntaxException e) {}
         } catch (final UnknownHostException e) {
             request.releaseConnection();
-            throw new IOException("client connection failed: unknown host " + request.getURI().getHost());
+            throw new HostCircuitBreaker.HostFailureException("client connection failed: unknown host " + host);
+        } catch (final ConnectionPoolTimeoutException e) {
+            // no connection was free in the local pool; the host is not to blame
+            request.releaseConnection();
+            throw new IOException("client connection pool exhausted for request: " + request.getURI());
+        } catch (final ConnectTimeoutException e) {
+            request.releaseConnection();
+            HostTimeouts.recordConnect(host, connectTimeout);
+            throw new HostCircuitBreaker.HostFailureException("client connection timeout for request: " + request.getURI());
         } catch (final SocketTimeoutException e) {
             request.releaseConnection();
-            throw new IOException("client connection timeout for request: " + request.getURI());
+            HostTimeouts.recordResponse(host, socketTimeout);
+            throw new HostCircuitBreaker.HostFailureException("client connection timeout for request: " + request.getURI());
         } catch (final SSLHandshakeException e) {
             request.releaseConnection();
             throw new IOException("client connection handshake error for domain " + request.getURI().getHost() + ": " + e.getMessage());
         } catch (final HttpHostConnectException e) {
             request.releaseConnection();
-            throw new IOException("client connection refused for request " + request.getURI() + ": " + e.getMessage());
+            throw new HostCircuitBreaker.HostFailureException("client connection refused for request " + request.getURI() + ": " + e.getMessage());
         } catch (final Throwable e) {
             request.releaseConnection();
+            // an aborted request fails with a closed socket; the deadline is a budget of this loader and not a failure of the host
+            if (deadline.isExpired()) throw deadlineExceeded(url);
             throw new IOException("error " + request.getURI() + ": " + e.getMessage());
         } finally {
-            if (httpResponse != null) {
-                this.status_code = httpResponse.getStatusLine().getStatusCode();
-                final HttpEntity httpEntity = httpResponse.getEntity();
-                if (head || this.status_code != 200) {
-                    EntityUtils.consumeQuietly(httpEntity);
-                    if (!head && this.status_code != 200) {
-                        request.releaseConnection();
-                        throw new IOException("client connection to " + url + " fail (status code " + this.status_code + "): " + httpResponse.getStatusLine().getReasonPhrase());
-                    }
-                } else {
-                    try {
-                        final InputStream inputStream = new BufferedInputStream(httpEntity.getContent());
-                        final ByteArrayOutputStream r = new ByteArrayOutputStream();
-                        final byte[] b = new byte[1024];
-                        int c;
-                        while ((c = inputStream.read(b)) > 0) r.write(b, 0, c);
-                        this.content = r.toByteArray();
-                    } catch (final IOException e) {
-                        throw e;
+            try {
+                if (httpResponse != null) {
+                    this.status_code = httpResponse.getStatusLine().getStatusCode();
+                    final HttpEntity httpEntity = httpResponse.getEntity();
+                    if (head || this.status_code != 200) {
+                        EntityUtils.consumeQuietly(httpEntity);
+                        if (!head && this.status_code != 200 && this.status_code != 304) {
+                            request.releaseConnection();
+                            throw new IOException("client connection to " + url + " fail (status code " + this.status_code + "): " + httpResponse.getStatusLine().getReasonPhrase());
+                        }
+                    } else {
+                        if (policy != null) {
+                            final Header contentType = httpResponse.getFirstHeader("Content-Type");
+                            try {
+                                policy.checkResponse(contentType == null ? null : contentType.getValue(), httpEntity.getContentLength());
+                            } catch (final LoadPolicy.SkippedException e) {
+                                // close the connection without transferring the content
+                                request.abort();
+                                throw e;
+                            }
+                        }
+                        final long limit = policy == null ? ContentBuffer.maxSize : policy.limit(ContentBuffer.maxSize);
+                        final ContentBuffer buffer = new ContentBuffer(ContentBuffer.memoryThreshold, limit);
+                        try {
+                            final InputStream inputStream = BandwidthShaper.shape(httpEntity.getContent(), deadline);
+                            if (!buffer.readFrom(inputStream)) {
+                                // stop the transfer, the content is truncated at the maximum size
+                                request.abort();
+                                if (policy != null && policy.isPolicyLimit(limit)) throw new LoadPolicy.SkippedException("content exceeds " + limit + " bytes");
+                                Logger.info(this.getClass(), "ContentLoader truncated " + url + " at " + buffer.length() + " bytes");
+                            }
+                        } catch (final IOException e) {
+                            buffer.close();
+                            if (deadline.isExpired()) throw deadlineExceeded(url);
+                            throw e;
+                        }
+                        this.content = buffer;
+                        Logger.info(this.getClass(), "ContentLoader loaded " + url);
                     }
-                    Logger.info(this.getClass(), "ContentLoader loaded " + url);
-                }
 
-                // read response header and set mime
-                if (this.status_code == 200 || this.status_code == 403) {
-                    for (final Header h: httpResponse.getAllHeaders()) {
-                        List<String> vals = this.header.get(h.getName());
-                        if (vals == null) { vals = new ArrayList<String>(); this.header.put(h.getName(), vals); }
-                        vals.add(h.getValue());
-                        if (h.getName().equals("Content-Type")) this.mime = h.getValue();
+                    // read response header and set mime
+                    if (this.status_code == 200 || this.status_code == 304 || this.status_code == 403) {
+                        for (final Header h: httpResponse.getAllHeaders()) {
+                            List<String> vals = this.header.get(h.getName());
+                            if (vals == null) { vals = new ArrayList<String>(); this.header.put(h.getName(), vals); }
+                            vals.add(h.getValue());
+                            if (h.getName().equals("Content-Type")) this.mime = h.getValue();
+                        }
                     }
-                }
 
-                // fix mime in case a font is assigned
-                final int p = this.mime.indexOf(';');
-                if (p >= 0) {
-                    String charset = p < this.mime.length() - 2 ? this.mime.substring(p + 2) : "";
-                    this.mime = this.mime.substring(0, p);
-                    if (charset.startsWith("; charset=")) charset = charset.substring(10);
-                }
+                    // fix mime in case a font is assigned
+                    final int p = this.mime.indexOf(';');
+                    if (p >= 0) {
+                        String charset = p < this.mime.length() - 2 ? this.mime.substring(p + 2) : "";
+                        this.mime = this.mime.substring(0, p);
+                        if (charset.startsWith("; charset=")) charset = charset.substring(10);
+                    }
 
-                // compute response header string
-                sb.setLength(0);
-                sb.append(status.getProtocolVersion()).append(' ').append(this.status_code).append(CRLF);
-                for (final Map.Entry<String, List<String>> headers: this.header.entrySet()) {
-                    for (final String v: headers.getValue()) {
-                        sb.append(headers.getKey()).append(": ").append(v).append(CRLF);
+                    // compute response header string
+                    sb.setLength(0);
+                    sb.append(status.getProtocolVersion()).append(' ').append(this.status_code).append(CRLF);
+                    for (final Map.Entry<String, List<String>> headers: this.header.entrySet()) {
+                        for (final String v: headers.getValue()) {
+                            sb.append(headers.getKey()).append(": ").append(v).append(CRLF);
+                        }
                     }
+                    sb.append(CRLF);
+                    this.responseHeader = sb.toString();
                 }
-                sb.append(CRLF);
-                this.responseHeader = sb.toString();
+                request.releaseConnection();
+            } finally {
+                deadline.cancel();
             }
-            request.releaseConnection();
         }
     }
 
@@ -201,10 +419,69 @@ public class LoaderClientConnection implements HttpClient {
     }
 
     @Override
-    public byte[] getContent() {
+    public String getURL() {
+        return this.url;
+    }
+
+    @Override
+    public ContentBuffer getContent() {
         return this.content;
     }
 
+    /**
+     * a socket factory which records the connect time of new connections for the timeout estimation
+     */
+    private static class TimedSocketFactory implements LayeredConnectionSocketFactory {
+        private final ConnectionSocketFactory factory;
+
+        private TimedSocketFactory(final ConnectionSocketFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Socket createSocket(final HttpContext context) throws IOException {
+            return this.factory.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(final int connectTimeout, final Socket sock, final HttpHost host, final InetSocketAddress remoteAddress,
+                final InetSocketAddress localAddress, final HttpContext context) throws IOException {
+            final long t = System.currentTimeMillis();
+            final Socket socket = this.factory.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            HostTimeouts.recordConnect(host.getHostName(), System.currentTimeMillis() - t);
+            return socket;
+        }
+
+        @Override
+        public Socket createLayeredSocket(final Socket socket, final String target, final int port, final HttpContext context) throws IOException {
+            if (!(this.factory instanceof LayeredConnectionSocketFactory)) throw new IOException("no layered socket for " + target);
+            return ((LayeredConnectionSocketFactory) this.factory).createLayeredSocket(socket, target, port, context);
+        }
+    }
+
+    /**
+     * a request executor which records the time from the sent request to the response header for the timeout estimation;
+     * the wait for a pooled connection and the connect time are not part of the sample
+     */
+    private static class TimedRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        protected HttpResponse doSendRequest(final HttpRequest request, final HttpClientConnection conn, final HttpContext context) throws IOException, HttpException {
+            final HttpResponse response = super.doSendRequest(request, conn, context);
+            context.setAttribute(REQUEST_SENT, System.currentTimeMillis());
+            return response;
+        }
+
+        @Override
+        protected HttpResponse doReceiveResponse(final HttpRequest request, final HttpClientConnection conn, final HttpContext context) throws HttpException, IOException {
+            final HttpResponse response = super.doReceiveResponse(request, conn, context);
+            final Long sent = (Long) context.getAttribute(REQUEST_SENT);
+            final HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+            if (sent != null && target != null) HostTimeouts.recordResponse(target.getHostName(), System.currentTimeMillis() - sent);
+            return response;
+        }
+    }
+
     public static void main(final String[] args) {
         try {
             //final LoaderClientConnection client = new LoaderClientConnection("https://yacy.net", false);
@@ -214,7 +491,7 @@ public class LoaderClientConnection implements HttpClient {
             System.out.println("status: " + status);
             //String requestHeaders = client.getRequestHeader().toString();
             //String responseHeaders = client.getResponseHeader().toString();
-            System.out.println(new String(client.getContent()));
+            System.out.println(new String(client.getContent().toByteArray()));
 
         } catch (final IOException e) {
             e.printStackTrace();
@@ -0,0 +1,215 @@
+/**
+ *  PolitenessScheduler
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A host-keyed scheduler which enforces the throttling between two loads on the same host
+ * without blocking a thread: waiting urls are parked in a delay queue and a dispatcher hands
+ * them to the worker executor as soon as their host is due. For each host there is at most
+ * one load in flight; the throttling for the next url of a host is counted from the end of
+ * the previous load on that host. The scheduler is shared by all loader actions of a node,
+ * so concurrent actions which contain the same host are also throttled against each other.
+ * When the scheduler is stopped, the loads which have not been started are cancelled.
+ */
+public class PolitenessScheduler {
+
+    private final ExecutorService workers;
+    private final DelayQueue<HostQueue> due;
+    private final Map<String, HostQueue> hosts; // all hosts with pending or running loads; guarded by this
+    private final Thread dispatcher;
+    private volatile boolean shallRun;
+
+    public PolitenessScheduler(final ExecutorService workers) {
+        this.workers = workers;
+        this.due = new DelayQueue<>();
+        this.hosts = new HashMap<>();
+        this.shallRun = true;
+        this.dispatcher = new Thread(this::dispatch, "PolitenessScheduler");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * schedule a load
+     * @param host the host of the url; all loads with the same host are serialized and throttled
+     * @param throttling computes the delay in milliseconds before the load may start. This is called
+     *   right before the url is parked, either on the calling thread or on a worker after the previous
+     *   load for the same host has finished.
+     * @param load the load process, called on a worker thread
+     * @param cancel called instead of the load if the scheduler is stopped before the load has started
+     */
+    public void schedule(final String host, final LongSupplier throttling, final Runnable load, final Runnable cancel) {
+        final HostQueue hq;
+        synchronized (this) {
+            if (!this.shallRun) {
+                cancel.run();
+                return;
+            }
+            hq = this.hosts.computeIfAbsent(host, HostQueue::new);
+            hq.pending.add(new Entry(throttling, load, cancel));
+            if (hq.active) return; // the host is already parked or loading; the entry is picked up after that
+            hq.active = true;
+        }
+        park(hq);
+    }
+
+    /**
+     * @return the number of hosts which have pending or running loads
+     */
+    public synchronized int hostCount() {
+        return this.hosts.size();
+    }
+
+    /**
+     * @return the number of hosts which are currently waiting for their throttling delay
+     */
+    public int parkedCount() {
+        return this.due.size();
+    }
+
+    /**
+     * stop the scheduler; running loads are finished, the waiting loads are cancelled
+     */
+    public void stop() {
+        final List<Entry> cancelled = new ArrayList<>();
+        synchronized (this) {
+            this.shallRun = false;
+            this.hosts.values().forEach(hq -> {
+                cancelled.addAll(hq.pending);
+                hq.pending.clear();
+            });
+        }
+        this.dispatcher.interrupt();
+        this.workers.shutdown();
+        for (final Entry entry: cancelled) {
+            try {
+                entry.cancel.run();
+            } catch (final Throwable e) {
+                Logger.warn(this.getClass(), "PolitenessScheduler cancel failed", e);
+            }
+        }
+    }
+
+    private void park(final HostQueue hq) {
+        final Entry next;
+        synchronized (this) {
+            next = hq.pending.peek();
+        }
+        if (next == null) return; // the entries were cancelled by stop
+        // computing the throttling may require a remote call, we do that without holding the lock
+        long delay = 0;
+        try {
+            delay = Math.max(0, next.throttling.getAsLong());
+        } catch (final Throwable e) {
+            Logger.warn(this.getClass(), "PolitenessScheduler throttling computation failed for host " + hq.host, e);
+        }
+        hq.dueTime = System.currentTimeMillis() + delay;
+        this.due.put(hq);
+    }
+
+    private void done(final HostQueue hq) {
+        synchronized (this) {
+            if (hq.pending.isEmpty()) {
+                hq.active = false;
+                this.hosts.remove(hq.host);
+                return;
+            }
+        }
+        park(hq);
+    }
+
+    private void dispatch() {
+        while (this.shallRun) {
+            final HostQueue hq;
+            try {
+                hq = this.due.take();
+            } catch (final InterruptedException e) {
+                continue;
+            }
+            final Entry entry;
+            synchronized (this) {
+                entry = hq.pending.poll();
+            }
+            if (entry == null) continue; // the entries were cancelled by stop
+            try {
+                this.workers.execute(() -> {
+                    try {
+                        entry.load.run();
+                    } catch (final Throwable e) {
+                        Logger.warn(this.getClass(), "PolitenessScheduler load failed for host " + hq.host, e);
+                    } finally {
+                        done(hq);
+                    }
+                });
+            } catch (final Throwable e) {
+                // the executor rejected the load (i.e. it was shut down); run it here to not lose the entry
+                Logger.warn(this.getClass(), "PolitenessScheduler worker rejected load for host " + hq.host, e);
+                try {entry.load.run();} finally {done(hq);}
+            }
+        }
+    }
+
+    private static class Entry {
+        private final LongSupplier throttling;
+        private final Runnable load, cancel;
+        private Entry(final LongSupplier throttling, final Runnable load, final Runnable cancel) {
+            this.throttling = throttling;
+            this.load = load;
+            this.cancel = cancel;
+        }
+    }
+
+    private static class HostQueue implements Delayed {
+        private final String host;
+        private final ArrayDeque<Entry> pending;
+        private boolean active; // true if the host is parked in the delay queue or a load is running
+        private volatile long dueTime;
+
+        private HostQueue(final String host) {
+            this.host = host;
+            this.pending = new ArrayDeque<>();
+            this.active = false;
+            this.dueTime = 0;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(this.dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed o) {
+            return Long.compare(this.getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *  PrefetchedWebConnection
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * The web connection of a headless browser session which serves the main document of a render from the content
+ * of the GET request which was already done by the loader; only the subresources are loaded from the network.
+ * The connection is installed once in each web client and gets the document for the duration of a render.
+ * The document is served once; a reload of the page by a script is done over the network.
+ */
+public class PrefetchedWebConnection extends WebConnectionWrapper {
+
+    private static final AtomicLong served = new AtomicLong(0);
+
+    private String url = null;
+    private List<NameValuePair> headers = null;
+    private ContentBuffer content = null;
+
+    /**
+     * wrap the web connection of the client and install this connection in the client
+     * @param webClient the web client
+     */
+    public PrefetchedWebConnection(final WebClient webClient) {
+        super(webClient);
+    }
+
+    /**
+     * set the main document of the next render
+     * @param url the url of the document; this must be the url of the response, after redirects
+     * @param header the response header of the GET request
+     * @param content the decoded content; the buffer is not closed by the connection
+     */
+    public synchronized void setDocument(final URL url, final Map<String, List<String>> header, final ContentBuffer content) {
+        this.url = url.toExternalForm();
+        this.headers = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> entry: header.entrySet()) {
+            final String name = entry.getKey();
+            // the content is decoded and not chunked; its length is known from the buffer
+            if (name == null || "Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name)) continue;
+            for (final String value: entry.getValue()) this.headers.add(new NameValuePair(name, value));
+        }
+        this.headers.add(new NameValuePair("Content-Length", Long.toString(content.length())));
+        this.content = content;
+    }
+
+    /**
+     * remove the main document after a render
+     */
+    public synchronized void clear() {
+        this.url = null;
+        this.headers = null;
+        this.content = null;
+    }
+
+    @Override
+    public WebResponse getResponse(final WebRequest request) throws IOException {
+        synchronized (this) {
+            if (this.content != null && request.getHttpMethod() == HttpMethod.GET && request.getUrl().toExternalForm().equals(this.url)) {
+                served.incrementAndGet();
+                final WebResponse response = new WebResponse(new WebResponseData(new BufferContent(this.content), 200, "OK", this.headers), request, 0);
+                this.url = null;
+                this.headers = null;
+                this.content = null;
+                return response;
+            }
+        }
+        return super.getResponse(request);
+    }
+
+    /**
+     * @return the number of main documents which were served from the content of the GET request
+     */
+    public static long served() {
+        return served.get();
+    }
+
+    /**
+     * the content of the GET request; the buffer belongs to the loader and is not closed when the page is cleaned up
+     */
+    private static class BufferContent implements DownloadedContent {
+        private static final long serialVersionUID = -5063215877402939130L;
+        private final transient ContentBuffer content;
+
+        private BufferContent(final ContentBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return this.content.getInputStream();
+        }
+
+        @Override
+        public void cleanUp() {
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.content.length() == 0;
+        }
+
+        @Override
+        public long length() {
+            return this.content.length();
+        }
+    }
+}
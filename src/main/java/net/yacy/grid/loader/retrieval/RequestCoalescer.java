@@ -0,0 +1,269 @@
+/**
+ *  RequestCoalescer
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Coalescing of concurrent GET requests for the same url.
+ * The first request for a url does the fetch; requests for the same url which arrive while the fetch is running
+ * wait for it and get the same response. The content buffer of the response is shared by all requests.
+ * With a result window, requests which arrive shortly after the fetch has finished get the response as well.
+ */
+public class RequestCoalescer {
+
+    public static boolean enabled = true;
+    public static long window = 0; // the time in milliseconds a finished response is kept for later requests
+
+    private static final long PURGE_PAUSE = 1000;
+
+    private static final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private static final AtomicLong requests = new AtomicLong(0), coalesced = new AtomicLong(0), windowHits = new AtomicLong(0);
+    private static volatile long lastPurge = 0;
+
+    /**
+     * load a url with a GET request or join a running request for the same url
+     * @param url the url
+     * @param requestHeaders additional request headers or null; requests with different headers are not coalesced
+     * @param policy the load policy of the crawl or null
+     * @return the http client with the response; the content buffer must be closed after use
+     * @throws IOException
+     */
+    public static HttpClient connect(final String url, final Map<String, String> requestHeaders, final LoadPolicy policy) throws IOException {
+        if (!enabled) return HttpEngine.connect(url, false, requestHeaders, policy);
+        requests.incrementAndGet();
+        purge();
+        final String key = key(url, requestHeaders);
+        final Flight flight = new Flight();
+        while (true) {
+            final Flight running = flights.putIfAbsent(key, flight);
+            if (running == null) break; // this request does the fetch
+            if (running.isExpired()) {
+                if (flights.remove(key, running)) running.detach();
+                continue;
+            }
+            if (!running.attach()) continue; // the flight has just been removed
+            final HttpClient shared = running.join(policy);
+            if (shared != null) return shared;
+            // the running request was skipped by a different load policy; load the url with the own policy
+            return HttpEngine.connect(url, false, requestHeaders, policy);
+        }
+
+        // do the fetch and hand over the response to the waiting requests
+        try {
+            final HttpClient client = HttpEngine.connect(url, false, requestHeaders, policy);
+            flight.complete(client, null);
+            return client;
+        } catch (final IOException e) {
+            flight.complete(null, e);
+            throw e;
+        } catch (final RuntimeException e) {
+            // the waiting requests must not wait forever
+            flight.complete(null, new IOException(e.getMessage()));
+            throw e;
+        } finally {
+            if (window <= 0 || flight.error != null) {
+                if (flights.remove(key, flight)) flight.detach();
+            } else {
+                flight.expires = System.currentTimeMillis() + window;
+            }
+        }
+    }
+
+    private static String key(final String url, final Map<String, String> requestHeaders) {
+        String key;
+        try {
+            final URL u = new URL(url);
+            final String protocol = u.getProtocol().toLowerCase(Locale.ROOT);
+            final int port = u.getPort() == u.getDefaultPort() ? -1 : u.getPort();
+            key = protocol + "://" + u.getHost().toLowerCase(Locale.ROOT) + (port < 0 ? "" : ":" + port) + (u.getFile().length() == 0 ? "/" : u.getFile());
+        } catch (final MalformedURLException e) {
+            key = url;
+        }
+        if (requestHeaders != null && !requestHeaders.isEmpty()) key += " " + new TreeMap<>(requestHeaders).toString();
+        return key;
+    }
+
+    /**
+     * remove the responses which are older than the result window
+     */
+    private static void purge() {
+        final long now = System.currentTimeMillis();
+        if (now - lastPurge < PURGE_PAUSE) return;
+        lastPurge = now;
+        flights.forEach((key, flight) -> {
+            if (flight.isExpired() && flights.remove(key, flight)) flight.detach();
+        });
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("enabled", enabled);
+        json.put("window", window);
+        json.put("requests", requests.get());
+        json.put("coalesced", coalesced.get());
+        json.put("windowHits", windowHits.get());
+        json.put("entries", flights.size());
+        return json;
+    }
+
+    /**
+     * a running or finished fetch. The flight holds a reference on the content buffer as long as it can be joined;
+     * the reference is released when the flight was removed from the map and all joined requests have their share.
+     */
+    private static class Flight {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile HttpClient response = null;
+        private volatile IOException error = null;
+        private volatile long expires = Long.MAX_VALUE; // a running flight does not expire
+        private int attached = 0;
+        private boolean detached = false;
+
+        private void complete(final HttpClient response, final IOException error) {
+            if (response != null && response.getContent() != null) response.getContent().retain();
+            this.response = response;
+            this.error = error;
+            this.done.countDown();
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > this.expires;
+        }
+
+        private synchronized boolean attach() {
+            if (this.detached) return false;
+            this.attached++;
+            return true;
+        }
+
+        private synchronized void detach() {
+            this.detached = true;
+            if (this.attached == 0) release();
+        }
+
+        private void release() {
+            if (this.response != null && this.response.getContent() != null) this.response.getContent().close();
+        }
+
+        /**
+         * wait for the response of the flight
+         * @param policy the load policy of the joining request
+         * @return the shared response or null if the fetch was skipped by the load policy of the fetching request
+         * @throws IOException if the fetch failed or the response is rejected by the own load policy
+         */
+        private HttpClient join(final LoadPolicy policy) throws IOException {
+            boolean finished = this.done.getCount() == 0;
+            final ContentBuffer content;
+            try {
+                try {
+                    this.done.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException("interrupted while waiting for a running request");
+                }
+                if (this.error instanceof LoadPolicy.SkippedException) return null;
+                if (this.error != null) throw this.error; // the same failure, i.e. an open circuit, for all waiting requests
+                content = this.response.getContent() == null ? null : this.response.getContent().retain();
+            } finally {
+                synchronized (this) {
+                    this.attached--;
+                    if (this.attached == 0 && this.detached) release();
+                }
+            }
+            if (finished) windowHits.incrementAndGet(); else coalesced.incrementAndGet();
+
+            // the response was loaded with the load policy of another crawl
+            final SharedResponse shared = new SharedResponse(this.response, content);
+            if (policy != null) try {
+                final List<String> contentType = getHeader(shared, "Content-Type");
+                policy.checkResponse(contentType == null || contentType.isEmpty() ? null : contentType.get(0), content == null ? -1 : content.length());
+            } catch (final LoadPolicy.SkippedException e) {
+                if (content != null) content.close();
+                throw e;
+            }
+            return shared;
+        }
+    }
+
+    private static List<String> getHeader(final HttpClient client, final String name) {
+        for (final Map.Entry<String, List<String>> entry: client.getHeader().entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * the response of another request with an own reference on the content buffer
+     */
+    private static class SharedResponse implements HttpClient {
+        private final HttpClient response;
+        private final ContentBuffer content;
+
+        private SharedResponse(final HttpClient response, final ContentBuffer content) {
+            this.response = response;
+            this.content = content;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return this.response.getStatusCode();
+        }
+
+        @Override
+        public String getMime() {
+            return this.response.getMime();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeader() {
+            return this.response.getHeader();
+        }
+
+        @Override
+        public String getRequestHeader() {
+            return this.response.getRequestHeader();
+        }
+
+        @Override
+        public String getResponseHeader() {
+            return this.response.getResponseHeader();
+        }
+
+        @Override
+        public String getURL() {
+            return this.response.getURL();
+        }
+
+        @Override
+        public ContentBuffer getContent() {
+            return this.content;
+        }
+    }
+}
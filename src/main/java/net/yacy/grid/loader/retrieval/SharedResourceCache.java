@@ -0,0 +1,368 @@
+/**
+ *  SharedResourceCache
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+import net.yacy.grid.tools.Logger;
+
+/**
+ * A cache of subresources (scripts, style sheets) which is shared by all headless browser sessions.
+ * The content of the resources is stored in files of a cache directory, only the response headers and the
+ * compiled scripts are kept on the heap. An entry is identified by the url and the validators (ETag, Last-Modified)
+ * of the response; a response with other validators replaces the entry together with its compiled script.
+ * Entries are used as long as they are fresh according to Cache-Control max-age, Expires or, heuristically,
+ * a tenth of the age given by Last-Modified. The total size of the stored content is bounded, the least recently
+ * used entries are removed first.
+ *
+ * The stored content is decoded, therefore the entries keep the response headers without the transfer encoding headers.
+ * An entry which is replaced or evicted may still be read by a session which got its response before; the file of such
+ * an entry is deleted when no stream of it is open and the entry was removed longer ago than any render takes.
+ *
+ * Web clients clear their cache when they are closed; therefore clear() does not remove the shared entries.
+ */
+public class SharedResourceCache extends Cache {
+
+    private static final long serialVersionUID = -3826510718205739148L;
+    private static final long MAX_HEURISTIC_FRESHNESS = 86400000; // one day
+    private static final long RETIRE_TIME = 600000; // time in milliseconds the file of a removed entry is kept for sessions which still read it
+
+    public static final SharedResourceCache instance = new SharedResourceCache();
+
+    private long maxBytes = 0; // 0 switches the cache off
+    private boolean compiledScripts = true;
+    private File directory = null;
+    private long bytes = 0;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final List<Entry> retired = new ArrayList<>(); // removed entries with a file which may still be read
+    private final AtomicLong hits = new AtomicLong(0), misses = new AtomicLong(0), stores = new AtomicLong(0),
+            evictions = new AtomicLong(0), scriptHits = new AtomicLong(0);
+
+    private SharedResourceCache() {
+        super();
+    }
+
+    /**
+     * configure the cache
+     * @param size the maximum size of the stored content in bytes, 0 switches the cache off
+     * @param storeCompiledScripts if true, the compiled scripts are shared as well
+     */
+    public synchronized void init(final long size, final boolean storeCompiledScripts) {
+        this.maxBytes = Math.max(0, size);
+        this.compiledScripts = storeCompiledScripts;
+        purge();
+        if (this.maxBytes > 0 && this.directory == null) try {
+            this.directory = Files.createTempDirectory("yacy-grid-loader-cache").toFile();
+            this.directory.deleteOnExit();
+        } catch (final IOException e) {
+            Logger.warn(SharedResourceCache.class, "SharedResourceCache cannot create cache directory, cache switched off", e);
+            this.maxBytes = 0;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    @Override
+    public synchronized boolean cacheIfPossible(final WebRequest request, final WebResponse response, final Object toCache) {
+        if (this.maxBytes <= 0 || request.getHttpMethod() != HttpMethod.GET || response.getStatusCode() != 200) return false;
+        final String contentType = response.getContentType().toLowerCase(Locale.ROOT);
+        if (contentType.startsWith("text/html") || contentType.startsWith("application/xhtml")) return false; // only subresources, not the pages
+        final long freshness = freshness(response);
+        if (freshness <= 0) return false;
+        final String key = request.getUrl().toExternalForm();
+        final String etag = response.getResponseHeaderValue("ETag");
+        final String lastModified = response.getResponseHeaderValue("Last-Modified");
+        final Entry existing = this.entries.get(key);
+        if (existing != null && Objects.equals(existing.etag, etag) && Objects.equals(existing.lastModified, lastModified)) {
+            // the same resource; this is the case when a script was compiled after its content was cached
+            if (toCache != null && this.compiledScripts) existing.compiled = toCache;
+            return true;
+        }
+        final long length = response.getContentLength();
+        if (length > this.maxBytes / 16) return false; // a single resource must not displace the cache
+        final File file;
+        try (InputStream in = response.getContentAsStream()) {
+            file = File.createTempFile("resource", ".bin", this.directory);
+            file.deleteOnExit();
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            return false;
+        }
+        final Entry entry = new Entry(file, response, etag, lastModified, System.currentTimeMillis() + freshness);
+        if (toCache != null && this.compiledScripts) entry.compiled = toCache;
+        remove(key);
+        this.entries.put(key, entry);
+        this.bytes += entry.length;
+        this.stores.incrementAndGet();
+        deleteOverflow();
+        return true;
+    }
+
+    @Override
+    protected synchronized void deleteOverflow() {
+        final Iterator<Map.Entry<String, Entry>> i = this.entries.entrySet().iterator();
+        while (this.bytes > this.maxBytes && i.hasNext()) {
+            final Entry entry = i.next().getValue();
+            i.remove();
+            this.bytes -= entry.length;
+            retire(entry);
+            this.evictions.incrementAndGet();
+        }
+        deleteRetired();
+    }
+
+    @Override
+    public synchronized WebResponse getCachedResponse(final WebRequest request) {
+        final Entry entry = getEntry(request);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return new WebResponse(new WebResponseData(new StoredContent(entry), entry.statusCode, entry.statusMessage, entry.headers), request, 0);
+    }
+
+    @Override
+    public synchronized Object getCachedObject(final WebRequest request) {
+        final Entry entry = getEntry(request);
+        if (entry == null || entry.compiled == null) return null;
+        this.scriptHits.incrementAndGet();
+        return entry.compiled;
+    }
+
+    private Entry getEntry(final WebRequest request) {
+        if (this.maxBytes <= 0 || request.getHttpMethod() != HttpMethod.GET) return null;
+        final String key = request.getUrl().toExternalForm();
+        final Entry entry = this.entries.get(key);
+        if (entry == null) return null;
+        if (System.currentTimeMillis() > entry.expires) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void remove(final String key) {
+        final Entry entry = this.entries.remove(key);
+        if (entry == null) return;
+        this.bytes -= entry.length;
+        retire(entry);
+    }
+
+    /**
+     * keep the file of an entry which is not in the cache any more; a session may still hold a response of the entry
+     * and read the file later, therefore the file is deleted after a delay
+     */
+    private void retire(final Entry entry) {
+        entry.retired = System.currentTimeMillis();
+        this.retired.add(entry);
+    }
+
+    /**
+     * delete the files of removed entries which are not read any more
+     */
+    private void deleteRetired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Entry> i = this.retired.iterator();
+        while (i.hasNext()) {
+            final Entry entry = i.next();
+            if (entry.readers.get() > 0 || now - entry.retired < RETIRE_TIME) continue;
+            entry.file.delete();
+            i.remove();
+        }
+    }
+
+    /**
+     * clears only the style sheets of the super class; the shared entries stay for the other sessions
+     */
+    @Override
+    public synchronized void clear() {
+        super.clear();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    /**
+     * remove the compiled scripts to free heap memory; the content stays in the cache
+     */
+    public synchronized void clearCompiled() {
+        this.entries.values().forEach(entry -> entry.compiled = null);
+    }
+
+    /**
+     * remove all entries
+     */
+    public synchronized void purge() {
+        new ArrayList<>(this.entries.keySet()).forEach(key -> remove(key));
+        deleteRetired();
+        super.clear();
+    }
+
+    /**
+     * compute the time a response can be used from the cache
+     * @return the freshness time in milliseconds, 0 if the response must not be cached
+     */
+    private static long freshness(final WebResponse response) {
+        final String cacheControl = response.getResponseHeaderValue("Cache-Control");
+        if (cacheControl != null) {
+            final String cc = cacheControl.toLowerCase(Locale.ROOT);
+            if (cc.contains("no-store") || cc.contains("no-cache") || cc.contains("private")) return 0;
+            final int p = cc.indexOf("max-age=");
+            if (p >= 0) {
+                int q = p + 8;
+                while (q < cc.length() && Character.isDigit(cc.charAt(q))) q++;
+                try {
+                    return Long.parseLong(cc.substring(p + 8, q)) * 1000L;
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        final long now = System.currentTimeMillis();
+        final Date expires = parseDateHeader(response, "Expires");
+        if (expires != null) return Math.max(0, expires.getTime() - now);
+        final Date lastModified = parseDateHeader(response, "Last-Modified");
+        if (lastModified != null) return Math.min(MAX_HEURISTIC_FRESHNESS, Math.max(0, (now - lastModified.getTime()) / 10));
+        return 0;
+    }
+
+    public synchronized JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("maxBytes", this.maxBytes);
+        json.put("bytes", this.bytes);
+        json.put("entries", this.entries.size());
+        json.put("hits", this.hits.get());
+        json.put("misses", this.misses.get());
+        json.put("scriptHits", this.scriptHits.get());
+        json.put("stores", this.stores.get());
+        json.put("evictions", this.evictions.get());
+        json.put("retired", this.retired.size());
+        return json;
+    }
+
+    private static class Entry {
+        private final File file;
+        private final long length, expires;
+        private final int statusCode;
+        private final String statusMessage, etag, lastModified;
+        private final List<NameValuePair> headers;
+        private Object compiled = null;
+        private long retired = 0;
+        private final AtomicInteger readers = new AtomicInteger(0); // the number of open streams of the file
+
+        private Entry(final File file, final WebResponse response, final String etag, final String lastModified, final long expires) {
+            this.file = file;
+            this.length = file.length();
+            this.statusCode = response.getStatusCode();
+            this.statusMessage = response.getStatusMessage();
+            this.headers = new ArrayList<>();
+            for (final NameValuePair header: response.getResponseHeaders()) {
+                final String name = header.getName();
+                // the file has the decoded content; its length is known from the file
+                if ("Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name)) continue;
+                this.headers.add(header);
+            }
+            this.headers.add(new NameValuePair("Content-Length", Long.toString(this.length)));
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * the content of a cache entry; the file belongs to the cache and is not removed when a page is cleaned up
+     */
+    private static class StoredContent implements DownloadedContent {
+        private static final long serialVersionUID = 6117640364612470187L;
+        private final transient Entry entry;
+        private final long length;
+
+        private StoredContent(final Entry entry) {
+            this.entry = entry;
+            this.length = entry.length;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            // the stream is counted so the file of a removed entry is not deleted while it is read
+            this.entry.readers.incrementAndGet();
+            try {
+                return new FilterInputStream(new FileInputStream(this.entry.file)) {
+                    private boolean closed = false;
+                    @Override
+                    public void close() throws IOException {
+                        if (this.closed) return;
+                        this.closed = true;
+                        StoredContent.this.entry.readers.decrementAndGet();
+                        super.close();
+                    }
+                };
+            } catch (final IOException e) {
+                this.entry.readers.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        public void cleanUp() {
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.length == 0;
+        }
+
+        @Override
+        public long length() {
+            return this.length;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ *  StaticPageDetector
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Decide from the content of a plain GET request if executing the javascript of a html page can change its content.
+ * The content is scanned once without building a DOM; the scan counts the executable scripts and the visible text,
+ * looks for markers of single page application frameworks and for noscript hints which ask to switch on javascript.
+ * A page without scripts or with enough visible text and no framework markers is static and is not rendered.
+ *
+ * The decisions are remembered for each host: if the recent pages of a host were decided the same way, the decision
+ * is used for the next pages of that host without a scan. Every RECHECK-th page of such a host is scanned anyway.
+ */
+public class StaticPageDetector {
+
+    public static boolean enabled = true;
+    public static int minText = 512; // the number of visible text characters of a page which is complete without javascript
+
+    private static final int MAX_SCAN = 1024 * 1024;  // the number of bytes which are scanned at most
+    private static final int MIN_DECISIONS = 8;       // the number of decisions for a host before a decision is learned
+    private static final double LEARN_RATIO = 0.9d;   // the share of the same decision which is learned
+    private static final int RECHECK = 32;
+    private static final int MAX_HOSTS = 10000;
+
+    private static final String[] SPA_ATTRIBUTES = new String[]{
+            "id=\"root\"", "id=\"app\"", "id=\"__next\"", "id=\"__nuxt\"", "id='root'", "id='app'",
+            "ng-app", "ng-version", "data-reactroot", "data-v-app", "ember-application"};
+    private static final String[] SPA_TAGS = new String[]{"app-root", "router-outlet"};
+    private static final String[] SPA_SCRIPT_MARKERS = new String[]{"__next_data__", "__nuxt__", "__initial_state__", "__preloaded_state__", "createroot(", "reactdom.render", "new vue(", "createapp("};
+    private static final String[] NOSCRIPT_HINTS = new String[]{"enable javascript", "javascript is required", "requires javascript", "javascript enabled", "turn on javascript", "activate javascript"};
+
+    private static final Map<String, HostDecisions> hosts = new LinkedHashMap<String, HostDecisions>(256, 0.75f, true) {
+        private static final long serialVersionUID = 4160937816431046252L;
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, HostDecisions> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+    private static final AtomicLong checked = new AtomicLong(0), skipped = new AtomicLong(0), scanned = new AtomicLong(0), learned = new AtomicLong(0);
+
+    /**
+     * decide if a html page must be rendered with the headless browser
+     * @param host the host of the page
+     * @param content the content of the plain GET request
+     * @param encoding the content encoding or null if the content is not encoded
+     * @return true if executing the javascript of the page can change its content
+     */
+    public static boolean needsRendering(final String host, final ContentBuffer content, final String encoding) {
+        if (!enabled) return true;
+        checked.incrementAndGet();
+        HostDecisions decisions;
+        synchronized (hosts) {
+            decisions = hosts.get(host);
+            if (decisions == null) {
+                decisions = new HostDecisions();
+                hosts.put(host, decisions);
+            }
+        }
+        boolean render;
+        final Boolean learnedDecision = decisions.learned();
+        if (learnedDecision != null) {
+            render = learnedDecision.booleanValue();
+            learned.incrementAndGet();
+        } else {
+            render = scan(content, encoding).needsRendering();
+            scanned.incrementAndGet();
+            decisions.add(render);
+        }
+        if (!render) skipped.incrementAndGet();
+        return render;
+    }
+
+    /**
+     * scan the content of a page
+     * @return the page features or features which require rendering if the content cannot be read
+     */
+    public static Features scan(final ContentBuffer content, final String encoding) {
+        final Features features = new Features();
+        try (InputStream in = encoding == null ? content.getInputStream() : ContentEncoding.getInputStream(content, encoding)) {
+            final byte[] b = new byte[8192];
+            int c;
+            while (features.bytes < MAX_SCAN && (c = in.read(b)) > 0) {
+                for (int i = 0; i < c; i++) features.next((char) (b[i] & 0xff));
+            }
+        } catch (final IOException e) {
+            features.spaMarkers++; // unreadable content is left to the headless browser
+        }
+        return features;
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("enabled", enabled);
+        json.put("minText", minText);
+        final long c = checked.get(), s = skipped.get();
+        json.put("checked", c);
+        json.put("skipped", s);
+        json.put("skipRate", c == 0 ? 0.0d : ((double) s) / c);
+        json.put("scanned", scanned.get());
+        json.put("learned", learned.get());
+        synchronized (hosts) {
+            json.put("hosts", hosts.size());
+        }
+        return json;
+    }
+
+    /**
+     * the recent decisions for a host
+     */
+    private static class HostDecisions {
+        private int render = 0, skip = 0, sinceCheck = 0;
+
+        private synchronized Boolean learned() {
+            final int count = this.render + this.skip;
+            if (count < MIN_DECISIONS) return null;
+            if (++this.sinceCheck >= RECHECK) {
+                this.sinceCheck = 0;
+                return null;
+            }
+            if (this.render >= LEARN_RATIO * count) return Boolean.TRUE;
+            if (this.skip >= LEARN_RATIO * count) return Boolean.FALSE;
+            return null;
+        }
+
+        private synchronized void add(final boolean rendered) {
+            if (rendered) this.render++; else this.skip++;
+            if (this.render + this.skip > 2 * MIN_DECISIONS) {
+                // keep the recent decisions more important than the old ones
+                this.render = this.render / 2;
+                this.skip = this.skip / 2;
+            }
+        }
+    }
+
+    /**
+     * the features of a page which are found by a single pass over the content; the content is read as ISO-8859-1,
+     * which keeps the markup intact for all ASCII-compatible charsets
+     */
+    public static class Features {
+        public int bytes = 0, scripts = 0, textChars = 0, spaMarkers = 0, noscriptHints = 0;
+
+        private enum State {text, tag, script, style, noscript}
+        private State state = State.text;
+        private final StringBuilder tag = new StringBuilder(256);
+        private final StringBuilder tail = new StringBuilder(64); // the recent characters in script, style and noscript content
+
+        /**
+         * @return true if executing the javascript can change the content of the page
+         */
+        public boolean needsRendering() {
+            if (this.scripts == 0) return false;
+            if (this.spaMarkers > 0 || this.noscriptHints > 0) return true;
+            return this.textChars < minText;
+        }
+
+        private void next(final char c) {
+            this.bytes++;
+            switch (this.state) {
+                case text:
+                    if (c == '<') {
+                        this.state = State.tag;
+                        this.tag.setLength(0);
+                    } else if (c > ' ') {
+                        this.textChars++;
+                    }
+                    break;
+                case tag:
+                    if (c == '>') {
+                        this.state = endTag();
+                    } else if (this.tag.length() < 256) {
+                        this.tag.append(Character.toLowerCase(c));
+                    }
+                    break;
+                default:
+                    // content of script, style or noscript elements, which ends with the closing tag
+                    if (this.tail.length() >= 64) this.tail.delete(0, 32);
+                    this.tail.append(Character.toLowerCase(c));
+                    if (this.state == State.script) {
+                        for (final String marker: SPA_SCRIPT_MARKERS) if (endsWith(this.tail, marker)) this.spaMarkers++;
+                    } else if (this.state == State.noscript) {
+                        for (final String hint: NOSCRIPT_HINTS) if (endsWith(this.tail, hint)) this.noscriptHints++;
+                    }
+                    if (c == '>' && endsWith(this.tail, "</" + this.state.name() + ">")) {
+                        this.state = State.text;
+                        this.tail.setLength(0);
+                    }
+                    break;
+            }
+        }
+
+        private State endTag() {
+            final String t = this.tag.toString();
+            for (final String attribute: SPA_ATTRIBUTES) if (t.indexOf(attribute) >= 0) this.spaMarkers++;
+            for (final String name: SPA_TAGS) if (t.startsWith(name)) this.spaMarkers++;
+            if (t.startsWith("script")) {
+                // data blocks are not executed
+                if (t.indexOf("json") < 0 && t.indexOf("text/template") < 0) this.scripts++;
+                return t.endsWith("/") ? State.text : State.script;
+            }
+            if (t.startsWith("style")) return State.style;
+            if (t.startsWith("noscript")) return State.noscript;
+            return State.text;
+        }
+
+        private static boolean endsWith(final StringBuilder sb, final String s) {
+            final int l = sb.length(), n = s.length();
+            if (l < n) return false;
+            for (int i = 0; i < n; i++) if (sb.charAt(l - n + i) != s.charAt(i)) return false;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ *  ThrottlingCache
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.yacy.grid.mcp.Service;
+
+/**
+ * A local rate limit for each crawl and host with the rate of the throttling which is computed by the grid control.
+ * For each crawl and host there is a refilling token bucket which holds at most one token and refills at one token per
+ * throttling delay of the grid control, so two loads of a crawl on the same host start at least that delay apart.
+ * A url which finds no token waits until the next token is due; the wait is returned as the throttling of the url.
+ * The delay is taken from the grid control again after leaseSize urls or leaseTime milliseconds, whatever comes first;
+ * the url which renews the delay is throttled by the grid control itself.
+ */
+public class ThrottlingCache {
+
+    private static final long DEFAULT_THROTTLING = 250;
+
+    private final int leaseSize;
+    private final long leaseTime;
+    private final Map<String, Bucket> buckets;
+
+    /**
+     * @param leaseSize number of urls which are throttled locally with one delay of the grid control; 1 means every url is checked remotely
+     * @param leaseTime maximum time in milliseconds a delay of the grid control is used
+     */
+    public ThrottlingCache(final int leaseSize, final long leaseTime) {
+        this.leaseSize = Math.max(1, leaseSize);
+        this.leaseTime = leaseTime;
+        this.buckets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * get the throttling delay for a url
+     * @return the time in milliseconds which must pass before the url may be loaded
+     */
+    public long checkThrottling(final String url, final String host, final String id, final int depth, final int crawlingDepth, final boolean loaderHeadless, final int priority) {
+        final String key = id + " " + host;
+        final long now = System.currentTimeMillis();
+        final Bucket bucket = this.buckets.get(key);
+        if (bucket != null) {
+            final long wait = bucket.take(now);
+            if (wait >= 0) return wait;
+        }
+
+        // synchronize with the grid control; the returned delay is the rate of the new bucket
+        long delay = DEFAULT_THROTTLING;
+        try {
+            delay = Service.instance.config.gridControl.checkThrottling(id, url, depth, crawlingDepth, loaderHeadless, priority);
+        } catch (final IOException e) {}
+        if (this.leaseSize > 1) {
+            // this url starts after the delay, the next token of the bucket is due one delay after that
+            this.buckets.put(key, new Bucket(delay, now + 2 * Math.max(0, delay), this.leaseSize - 1, now + this.leaseTime));
+            if (this.buckets.size() > 1000) this.buckets.values().removeIf(b -> b.expires < now);
+        }
+        return delay;
+    }
+
+    /**
+     * @return the number of crawl/host combinations with a bucket
+     */
+    public int size() {
+        return this.buckets.size();
+    }
+
+    private static class Bucket {
+        private final long interval, expires;
+        private long nextToken; // the time when the next token is available
+        private int uses;       // the number of urls until the delay is renewed
+
+        private Bucket(final long interval, final long nextToken, final int uses, final long expires) {
+            this.interval = Math.max(0, interval);
+            this.nextToken = nextToken;
+            this.uses = uses;
+            this.expires = expires;
+        }
+
+        /**
+         * take the next token
+         * @return the time in milliseconds until the token is available or -1 if the delay must be renewed
+         */
+        private synchronized long take(final long now) {
+            if (this.uses <= 0 || now > this.expires) return -1;
+            this.uses--;
+            final long start = Math.max(now, this.nextToken);
+            this.nextToken = start + this.interval;
+            return start - now;
+        }
+    }
+}
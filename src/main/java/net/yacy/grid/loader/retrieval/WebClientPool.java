@@ -0,0 +1,230 @@
+/**
+ *  WebClientPool
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import com.gargoylesoftware.htmlunit.StringWebResponse;
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+
+import net.yacy.grid.tools.Logger;
+import net.yacy.grid.tools.Memory;
+
+/**
+ * A bounded pool of HtmlUnit web clients for headless rendering.
+ * Creating a web client and warming up its javascript engine is more expensive than rendering a small page,
+ * therefore the clients are reused. Between two uses all windows of a client are closed, their jobs are removed
+ * and the cookies and the cache are cleared. A client is closed after a maximum number of uses and whenever
+ * the memory status is short; in that case the idle clients are closed as well.
+ */
+public class WebClientPool {
+
+    private static int maxIdle = 4;    // the maximum number of idle clients in the pool
+    private static int maxUses = 100;  // the number of renders after which a client is closed
+
+    private static final Deque<PooledClient> idle = new ArrayDeque<>();
+    private static final AtomicLong created = new AtomicLong(0), reused = new AtomicLong(0),
+            evictedUses = new AtomicLong(0), evictedMemory = new AtomicLong(0), discarded = new AtomicLong(0);
+
+    /**
+     * configure the pool and create the clients in the background
+     * @param size the maximum number of idle clients
+     * @param uses the number of renders after which a client is closed
+     * @param prewarm if true, the pool is filled with warmed-up clients
+     */
+    public static void init(final int size, final int uses, final boolean prewarm) {
+        maxIdle = Math.max(0, size);
+        maxUses = Math.max(1, uses);
+        if (!prewarm || maxIdle == 0) return;
+        final Thread t = new Thread(() -> {
+            for (int i = 0; i < maxIdle; i++) {
+                final PooledClient client = newClient();
+                warmUp(client.client);
+                synchronized (idle) {
+                    if (idle.size() >= maxIdle) {
+                        client.client.close();
+                        break;
+                    }
+                    idle.addLast(client);
+                }
+            }
+            Logger.info(WebClientPool.class, "WebClientPool prepared " + idle.size() + " web clients");
+        }, "WebClientPool prewarm");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * get an idle client from the pool or create a new one
+     * @return the client which must be given back with release
+     */
+    public static PooledClient acquire() {
+        synchronized (idle) {
+            final PooledClient client = idle.pollFirst();
+            if (client != null) {
+                reused.incrementAndGet();
+                return client;
+            }
+        }
+        return newClient();
+    }
+
+    /**
+     * give back a client after a render
+     * @param client the client from acquire
+     * @param reusable false if the render failed; such a client may be in an undefined state and is closed
+     */
+    public static void release(final PooledClient client, final boolean reusable) {
+        if (client.discarded) return; // the client was closed while it was in use
+        client.uses++;
+        if (!reusable) {
+            discarded.incrementAndGet();
+            close(client);
+            return;
+        }
+        if (Memory.shortStatus()) {
+            // free the memory of this and all idle clients and of the compiled scripts
+            evictedMemory.incrementAndGet();
+            SharedResourceCache.instance.clearCompiled();
+            close(client);
+            clear();
+            return;
+        }
+        if (client.uses >= maxUses) {
+            evictedUses.incrementAndGet();
+            close(client);
+            return;
+        }
+        try {
+            reset(client.client);
+        } catch (final Throwable e) {
+            discarded.incrementAndGet();
+            close(client);
+            return;
+        }
+        synchronized (idle) {
+            if (idle.size() < maxIdle) {
+                idle.addFirst(client); // the most recently used client is reused first
+                return;
+            }
+        }
+        close(client);
+    }
+
+    /**
+     * close a client which is in use, i.e. by a render which exceeded its time; the javascript of the client is stopped
+     * and the render fails. The client is not given back to the pool when the render releases it.
+     * @param client the client from acquire
+     */
+    public static void discard(final PooledClient client) {
+        client.discarded = true;
+        discarded.incrementAndGet();
+        close(client);
+    }
+
+    /**
+     * close all idle clients
+     */
+    public static void clear() {
+        final ArrayList<PooledClient> clients;
+        synchronized (idle) {
+            clients = new ArrayList<>(idle);
+            idle.clear();
+        }
+        evictedMemory.addAndGet(clients.size());
+        clients.forEach(client -> close(client));
+    }
+
+    private static PooledClient newClient() {
+        created.incrementAndGet();
+        return new PooledClient(HtmlUnitLoader.getClient());
+    }
+
+    /**
+     * run a small script so the javascript engine is initialized before the first render
+     */
+    private static void warmUp(final WebClient client) {
+        try {
+            final StringWebResponse response = new StringWebResponse(
+                    "<html><head><script>var x = [1, 2, 3].map(function(i) {return i * 2;}).join(',');</script></head><body></body></html>",
+                    new URL("http://localhost/"));
+            client.loadWebResponseInto(response, client.getCurrentWindow());
+            reset(client);
+        } catch (final Throwable e) {
+            Logger.warn(WebClientPool.class, "WebClientPool warm-up failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * remove all state of the previous render from the client
+     */
+    private static void reset(final WebClient client) {
+        for (final WebWindow ww: new ArrayList<>(client.getWebWindows())) {
+            ww.getJobManager().removeAllJobs();
+            if (ww instanceof TopLevelWindow) ((TopLevelWindow) ww).close();
+        }
+        client.getCookieManager().clearCookies();
+        client.getCache().clear(); // the shared resource cache keeps its entries for the other sessions
+    }
+
+    private static void close(final PooledClient client) {
+        try {
+            client.client.close();
+        } catch (final Throwable e) {
+            Logger.warn(WebClientPool.class, "WebClientPool close failed: " + e.getMessage());
+        }
+    }
+
+    public static JSONObject toJSON() {
+        final JSONObject json = new JSONObject(true);
+        json.put("maxIdle", maxIdle);
+        json.put("maxUses", maxUses);
+        synchronized (idle) {
+            json.put("idle", idle.size());
+        }
+        json.put("created", created.get());
+        json.put("reused", reused.get());
+        json.put("evictedUses", evictedUses.get());
+        json.put("evictedMemory", evictedMemory.get());
+        json.put("discarded", discarded.get());
+        return json;
+    }
+
+    /**
+     * a web client with its number of renders
+     */
+    public static class PooledClient {
+        public final WebClient client;
+        private int uses = 0;
+        private volatile boolean discarded = false;
+
+        private PooledClient(final WebClient client) {
+            this.client = client;
+        }
+    }
+}
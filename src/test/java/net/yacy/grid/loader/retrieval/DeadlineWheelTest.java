@@ -0,0 +1,155 @@
+/**
+ *  DeadlineWheelTest
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * The wheel is created without worker thread and advanced by the tests.
+ */
+public class DeadlineWheelTest {
+
+    @Test
+    public void testExpiresAtItsTick() {
+        final DeadlineWheel wheel = new DeadlineWheel(100, 8, false);
+        final AtomicBoolean fired = new AtomicBoolean(false);
+        wheel.schedule(() -> fired.set(true), 250); // rounded up to three ticks
+        wheel.advance();
+        wheel.advance();
+        assertFalse(fired.get());
+        wheel.advance();
+        assertTrue(fired.get());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testDelayLongerThanOneTurn() {
+        final DeadlineWheel wheel = new DeadlineWheel(100, 8, false);
+        final AtomicInteger fired = new AtomicInteger(0);
+        wheel.schedule(fired::incrementAndGet, 800);  // exactly one turn
+        wheel.schedule(fired::incrementAndGet, 2000); // two turns and a half
+        for (int i = 0; i < 7; i++) wheel.advance();
+        assertEquals(0, fired.get());
+        wheel.advance();
+        assertEquals(1, fired.get());
+        for (int i = 8; i < 19; i++) wheel.advance();
+        assertEquals(1, fired.get());
+        wheel.advance();
+        assertEquals(2, fired.get());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testScheduledInTheCurrentBucket() {
+        // a delay of a full turn puts the deadline into the bucket of the current tick; it must wait for the next turn
+        final DeadlineWheel wheel = new DeadlineWheel(100, 4, false);
+        final AtomicInteger fired = new AtomicInteger(0);
+        wheel.schedule(() -> {
+            fired.incrementAndGet();
+            wheel.schedule(fired::incrementAndGet, 400);
+        }, 100);
+        wheel.advance();
+        assertEquals(1, fired.get());
+        for (int i = 0; i < 3; i++) wheel.advance();
+        assertEquals(1, fired.get());
+        wheel.advance();
+        assertEquals(2, fired.get());
+    }
+
+    @Test
+    public void testCancel() {
+        final DeadlineWheel wheel = new DeadlineWheel(100, 8, false);
+        final AtomicBoolean fired = new AtomicBoolean(false);
+        final DeadlineWheel.Deadline deadline = wheel.schedule(() -> fired.set(true), 100);
+        assertEquals(1, wheel.pending());
+        deadline.cancel();
+        assertEquals(0, wheel.pending());
+        wheel.advance();
+        assertFalse(fired.get());
+        deadline.cancel(); // cancelling again does nothing
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testPostpone() {
+        final DeadlineWheel wheel = new DeadlineWheel(100, 4, false);
+        final AtomicBoolean fired = new AtomicBoolean(false);
+        final DeadlineWheel.Deadline deadline = wheel.schedule(() -> fired.set(true), 300);
+        wheel.advance();
+        wheel.advance();
+        assertTrue(deadline.postpone(400)); // the deadline moves to the same bucket in the next turn
+        for (int i = 0; i < 4; i++) wheel.advance();
+        assertFalse(fired.get());
+        wheel.advance();
+        assertTrue(fired.get());
+        assertEquals(0, wheel.pending());
+        assertFalse(deadline.postpone(100)); // an expired deadline cannot be postponed
+    }
+
+    @Test
+    public void testScheduleWhileAdvancing() throws InterruptedException {
+        // a deadline which is scheduled while the wheel advances must expire one tick after it was scheduled;
+        // it must not be put into a bucket which the wheel has just passed and wait for the next turn
+        final DeadlineWheel wheel = new DeadlineWheel(100, 4, false);
+        final AtomicLong ticks = new AtomicLong(0); // an upper bound of the tick of the wheel
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread advancer = new Thread(() -> {
+            while (running.get()) {
+                ticks.incrementAndGet();
+                wheel.advance();
+            }
+        });
+        advancer.start();
+        final int count = 100000;
+        final Thread[] schedulers = new Thread[4];
+        final long[][] fired = new long[schedulers.length][count];
+        final long[][] latest = new long[schedulers.length][count];
+        for (int t = 0; t < schedulers.length; t++) {
+            final int s = t;
+            schedulers[t] = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    final int n = i;
+                    wheel.schedule(() -> fired[s][n] = ticks.get(), 100);
+                    latest[s][n] = ticks.get() + 1;
+                }
+            });
+            schedulers[t].start();
+        }
+        for (final Thread scheduler: schedulers) scheduler.join();
+        running.set(false);
+        advancer.join();
+        ticks.incrementAndGet();
+        wheel.advance();
+        assertEquals(0, wheel.pending());
+        int late = 0;
+        for (int t = 0; t < schedulers.length; t++) {
+            for (int i = 0; i < count; i++) if (fired[t][i] == 0 || fired[t][i] > latest[t][i]) late++;
+        }
+        assertEquals(0, late);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ *  SharedResourceCacheTest
+ *  Copyright 17.10.2026 by Michael Peter Christen, @0rb1t3r
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.grid.loader.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class SharedResourceCacheTest {
+
+    private static final String SCRIPT = "var x = [1, 2, 3].map(function(i) {return i * 2;}).join(',');";
+
+    @Test
+    public void testGzipResponseRoundTrip() throws IOException {
+        final SharedResourceCache cache = SharedResourceCache.instance;
+        cache.init(1024 * 1024, true);
+        try {
+            final WebRequest request = new WebRequest(new URL("http://localhost/gzip.js"));
+            assertTrue(cache.cacheIfPossible(request, gzipResponse(request, SCRIPT, "\"a\""), null));
+
+            final WebResponse cached = cache.getCachedResponse(request);
+            assertNotNull(cached);
+            assertEquals(SCRIPT, cached.getContentAsString(StandardCharsets.UTF_8));
+            assertNull(cached.getResponseHeaderValue("Content-Encoding"));
+            assertEquals(Integer.toString(SCRIPT.length()), cached.getResponseHeaderValue("Content-Length"));
+        } finally {
+            cache.purge();
+        }
+    }
+
+    @Test
+    public void testReplacedEntryStaysReadable() throws IOException {
+        final SharedResourceCache cache = SharedResourceCache.instance;
+        cache.init(1024 * 1024, true);
+        try {
+            final WebRequest request = new WebRequest(new URL("http://localhost/replaced.js"));
+            assertTrue(cache.cacheIfPossible(request, gzipResponse(request, SCRIPT, "\"a\""), null));
+            final WebResponse old = cache.getCachedResponse(request);
+
+            // a response with another ETag replaces the entry while a session still holds the old response
+            final String replacement = "var y = 1;";
+            assertTrue(cache.cacheIfPossible(request, gzipResponse(request, replacement, "\"b\""), null));
+            assertEquals(SCRIPT, old.getContentAsString(StandardCharsets.UTF_8));
+            assertEquals(replacement, cache.getCachedResponse(request).getContentAsString(StandardCharsets.UTF_8));
+        } finally {
+            cache.purge();
+        }
+    }
+
+    private static WebResponse gzipResponse(final WebRequest request, final String content, final String etag) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        final byte[] body = baos.toByteArray();
+        final List<NameValuePair> headers = new ArrayList<>();
+        headers.add(new NameValuePair("Content-Type", "application/javascript"));
+        headers.add(new NameValuePair("Content-Encoding", "gzip"));
+        headers.add(new NameValuePair("Content-Length", Integer.toString(body.length)));
+        headers.add(new NameValuePair("Cache-Control", "max-age=3600"));
+        headers.add(new NameValuePair("ETag", etag));
+        return new WebResponse(new WebResponseData(body, 200, "OK", headers), request, 0);
+    }
+}